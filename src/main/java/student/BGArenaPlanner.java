@@ -16,10 +16,12 @@ public final class BGArenaPlanner {
     /**
      * Main entry point for the program.
      * 
-     * @param args command line arguments - not used at this time.
+     * @param args command line arguments - optionally the path of a collection csv to use
+     *             instead of the default one, which can be gzip compressed.
      */
     public static void main(String[] args) {
-        IPlanner planner = new Planner(GamesLoader.loadGamesFile(DEFAULT_COLLECTION));
+        String collection = args.length > 0 ? args[0] : DEFAULT_COLLECTION;
+        IPlanner planner = new Planner(GamesLoader.loadDatasetCached(collection));
         IGameList list = new GameList();
         ConsoleApp app = new ConsoleApp(list, planner);
         app.start();
@@ -0,0 +1,369 @@
+package student;
+
+import java.util.Arrays;
+
+/**
+ * Bitmaps of the rows of a table for a low cardinality column, so a condition on the column
+ * becomes a few word-wise operations on bitsets instead of a compare per row.
+ *
+ * The bitmaps are range encoded and binned: the distinct values are split into at most
+ * MAX_BINS runs holding about as many rows each, and for every run there is a bitmap of the
+ * rows whose value is at most the last value of the run. A comparison then needs one or two
+ * bitmaps, however many values it covers, and when its value falls inside a run, only the
+ * rows of that run are checked against the column. A column with MAX_BINS values or fewer
+ * gets a bin per value and is never checked. The index takes at most MAX_BINS bits per row.
+ *
+ * Conditions always compare against a whole number, so ratings and difficulties are put in
+ * two buckets per whole number: one for the number itself and one for the values between it
+ * and the next. A comparison with a whole number never splits a bucket, so the bitmaps give
+ * exact answers. NaN values are in no bitmap, so they match nothing but !=, as with the
+ * plain filter. Rows a refresh deleted from the table are in no bitmap either.
+ */
+final class BitmapIndex {
+    /** most distinct values a column can have and still be indexed. */
+    static final int MAX_VALUES = 256;
+    /** most bitmaps kept for a column, each one bit per row. */
+    static final int MAX_BINS = 16;
+    /** double values further than this from zero share the bucket at the limit. */
+    private static final double DOUBLE_LIMIT = 0x1p40;
+
+    /** number of rows, deleted rows included. */
+    private final int size;
+    /** the rows of the table that are deleted, in no bitmap. */
+    private final long[] deleted;
+    /** the int column, or null if the column holds doubles, which are bucketed. */
+    private final int[] ints;
+    /** the double column, or null if the column holds ints. */
+    private final double[] doubles;
+    /** the first key of each bin, ascending. */
+    private final long[] firstKeys;
+    /** the last key of each bin, ascending. */
+    private final long[] lastKeys;
+    /** atMost[i] holds the rows whose key is at most lastKeys[i]. */
+    private final long[][] atMost;
+
+    /**
+     * Constructor for the index.
+     *
+     * @param size      number of rows, deleted rows included
+     * @param deleted   the deleted rows
+     * @param ints      the int column, or null
+     * @param doubles   the double column, or null
+     * @param firstKeys the first key of each bin, ascending
+     * @param lastKeys  the last key of each bin, ascending
+     * @param atMost    the range encoded bitmaps
+     */
+    private BitmapIndex(int size, long[] deleted, int[] ints, double[] doubles,
+            long[] firstKeys, long[] lastKeys, long[][] atMost) {
+        this.size = size;
+        this.deleted = deleted;
+        this.ints = ints;
+        this.doubles = doubles;
+        this.firstKeys = firstKeys;
+        this.lastKeys = lastKeys;
+        this.atMost = atMost;
+    }
+
+    /**
+     * Builds the index of a numeric column.
+     *
+     * @param table  the table
+     * @param column the column, any numeric column but ID
+     * @return the index, or null if the column has more than MAX_VALUES distinct values
+     */
+    static BitmapIndex of(GameTable table, GameData column) {
+        int size = table.size();
+        int[] ints = table.intColumn(column);
+        double[] doubles = table.doubleColumn(column);
+        long[] rowKeys = new long[size];
+        boolean[] hasKey = new boolean[size];
+        int keyed = 0;
+        for (int row = 0; row < size; row++) {
+            if (!table.isDeleted(row) && (ints != null || !Double.isNaN(doubles[row]))) {
+                rowKeys[row] = ints != null ? ints[row] : bucket(doubles[row]);
+                hasKey[row] = true;
+                keyed++;
+            }
+        }
+
+        long[] keys = distinct(rowKeys, hasKey);
+        if (keys == null) {
+            return null;
+        }
+        int[] counts = new int[keys.length];
+        for (int row = 0; row < size; row++) {
+            if (hasKey[row]) {
+                counts[Arrays.binarySearch(keys, rowKeys[row])]++;
+            }
+        }
+        // each bin but the last holds more than keyed / MAX_BINS rows, so there are at
+        // most MAX_BINS of them
+        int target = keys.length <= MAX_BINS ? 0 : keyed / MAX_BINS + 1;
+        long[] firstKeys = new long[Math.min(keys.length, MAX_BINS)];
+        long[] lastKeys = new long[firstKeys.length];
+        int[] binOfKey = new int[keys.length];
+        int bins = 0;
+        int inBin = 0;
+        for (int k = 0; k < keys.length; k++) {
+            if (inBin == 0) {
+                firstKeys[bins] = keys[k];
+            }
+            binOfKey[k] = bins;
+            inBin += counts[k];
+            if (inBin >= target || k == keys.length - 1) {
+                lastKeys[bins++] = keys[k];
+                inBin = 0;
+            }
+        }
+
+        int words = words(size);
+        long[][] atMost = new long[bins][words];
+        for (int row = 0; row < size; row++) {
+            if (hasKey[row]) {
+                int bin = binOfKey[Arrays.binarySearch(keys, rowKeys[row])];
+                atMost[bin][row >>> 6] |= 1L << row;
+            }
+        }
+        for (int i = 1; i < bins; i++) {
+            for (int w = 0; w < words; w++) {
+                atMost[i][w] |= atMost[i - 1][w];
+            }
+        }
+        return new BitmapIndex(size, table.deleted(), ints, doubles,
+                Arrays.copyOf(firstKeys, bins), Arrays.copyOf(lastKeys, bins), atMost);
+    }
+
+    /**
+     * Builds the index of a patched table from the index of the table it was patched from.
+     *
+     * The bins are kept. The removed rows are cleared from every bitmap, and each fresh row is
+     * set in the bitmaps from the bin its value falls in up. A value between two bins joins
+     * the bin above it, and one past the last bin widens that bin, so the bins still hold
+     * every value, only less evenly, until the table is compacted and the index built again.
+     *
+     * @param table   the patched table
+     * @param column  the column of this index
+     * @param removed the rows of the old table that were deleted or replaced
+     * @param fresh   the rows of the patched table that were replaced or added
+     * @return the index of the patched table
+     */
+    BitmapIndex patch(GameTable table, GameData column, long[] removed, int[] fresh) {
+        if (atMost.length == 0) {
+            return of(table, column);
+        }
+        int words = words(table.size());
+        long[][] patched = new long[atMost.length][];
+        for (int i = 0; i < patched.length; i++) {
+            patched[i] = Arrays.copyOf(atMost[i], words);
+            for (int w = 0; w < removed.length; w++) {
+                patched[i][w] &= ~removed[w];
+            }
+        }
+        long[] newFirstKeys = firstKeys.clone();
+        long[] newLastKeys = lastKeys.clone();
+        int[] newInts = table.intColumn(column);
+        double[] newDoubles = table.doubleColumn(column);
+        for (int row : fresh) {
+            if (newDoubles != null && Double.isNaN(newDoubles[row])) {
+                continue;
+            }
+            long key = newInts != null ? newInts[row] : bucket(newDoubles[row]);
+            int bin = Arrays.binarySearch(newLastKeys, key);
+            if (bin < 0) {
+                bin = Math.min(-bin - 1, newLastKeys.length - 1);
+                newFirstKeys[bin] = Math.min(newFirstKeys[bin], key);
+                newLastKeys[bin] = Math.max(newLastKeys[bin], key);
+            }
+            for (int i = bin; i < patched.length; i++) {
+                patched[i][row >>> 6] |= 1L << row;
+            }
+        }
+        return new BitmapIndex(table.size(), table.deleted(), newInts, newDoubles,
+                newFirstKeys, newLastKeys, patched);
+    }
+
+    /**
+     * Get the number of bitmaps kept.
+     *
+     * @return the number of bins, at most MAX_BINS
+     */
+    int bins() {
+        return atMost.length;
+    }
+
+    /**
+     * Gets the rows that match a condition on the column of the index.
+     *
+     * @param condition the condition
+     * @return a new bitmap of the matching rows, or null if the operation can not be
+     *         answered from the index
+     */
+    long[] matching(FilterCondition condition) {
+        long key = doubles != null ? 2L * condition.getIntValue() : condition.getIntValue();
+        switch (condition.getOperation()) {
+            case LESS_THAN_EQUALS:
+                return atMost(key);
+            case LESS_THAN:
+                return atMost(key - 1);
+            case GREATER_THAN:
+                return andNot(atMost(Long.MAX_VALUE), atMost(key));
+            case GREATER_THAN_EQUALS:
+                return andNot(atMost(Long.MAX_VALUE), atMost(key - 1));
+            case EQUALS:
+                return andNot(atMost(key), atMost(key - 1));
+            case NOT_EQUALS:
+                return andNot(allRows(), andNot(atMost(key), atMost(key - 1)));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets the rows whose key is at most a key.
+     *
+     * The bins up to the one the key falls in come straight from a bitmap. If the key is
+     * inside a bin rather than its last key, the rows of that bin are checked one by one.
+     *
+     * @param key the key
+     * @return a new bitmap of the rows
+     */
+    private long[] atMost(long key) {
+        int at = Arrays.binarySearch(lastKeys, key);
+        if (at >= 0) {
+            return atMost[at].clone();
+        }
+        int bin = -at - 1; // the first bin ending above key
+        if (bin == atMost.length) {
+            return bin == 0 ? new long[words(size)] : atMost[bin - 1].clone();
+        }
+        long[] bits = bin == 0 ? new long[words(size)] : atMost[bin - 1].clone();
+        if (key < firstKeys[bin]) {
+            return bits;
+        }
+        long[] below = bin == 0 ? null : atMost[bin - 1];
+        for (int w = 0; w < bits.length; w++) {
+            long inBin = below == null ? atMost[bin][w] : atMost[bin][w] & ~below[w];
+            for (; inBin != 0; inBin &= inBin - 1) {
+                int row = w << 6 | Long.numberOfTrailingZeros(inBin);
+                if (key(row) <= key) {
+                    bits[w] |= 1L << row;
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Gets the key of a row that has one.
+     *
+     * @param row the row, its value not NaN
+     * @return the value, or its bucket for doubles
+     */
+    private long key(int row) {
+        return ints != null ? ints[row] : bucket(doubles[row]);
+    }
+
+    /**
+     * Gets a bitmap with every row set that is not deleted.
+     *
+     * @return a new bitmap of every row
+     */
+    private long[] allRows() {
+        long[] bits = new long[words(size)];
+        Arrays.fill(bits, -1L);
+        if (size % 64 != 0) {
+            bits[bits.length - 1] = -1L >>> (64 - size % 64);
+        }
+        return andNot(bits, deleted);
+    }
+
+    /**
+     * Removes the rows of one bitmap from another.
+     *
+     * @param bits   the bitmap to change
+     * @param remove the rows to remove
+     * @return bits, without the rows of remove
+     */
+    static long[] andNot(long[] bits, long[] remove) {
+        for (int w = 0; w < bits.length; w++) {
+            bits[w] &= ~remove[w];
+        }
+        return bits;
+    }
+
+    /**
+     * Keeps only the rows that are in both bitmaps.
+     *
+     * @param bits the bitmap to change
+     * @param keep the rows to keep
+     * @return bits, with only the rows also in keep
+     */
+    static long[] and(long[] bits, long[] keep) {
+        for (int w = 0; w < bits.length; w++) {
+            bits[w] &= keep[w];
+        }
+        return bits;
+    }
+
+    /**
+     * Check if a row is set in a bitmap.
+     *
+     * @param bits the bitmap
+     * @param row  the row
+     * @return true if the row is set
+     */
+    static boolean contains(long[] bits, int row) {
+        return (bits[row >>> 6] & 1L << row) != 0;
+    }
+
+    /**
+     * Gets the bucket of a double value: 2n for the whole number n, and 2n + 1 for the values
+     * between n and n + 1.
+     *
+     * @param value the value, not NaN
+     * @return the bucket key
+     */
+    private static long bucket(double value) {
+        double clamped = Math.max(-DOUBLE_LIMIT, Math.min(DOUBLE_LIMIT, value));
+        double floor = Math.floor(clamped);
+        return 2L * (long) floor + (clamped == floor ? 0 : 1);
+    }
+
+    /**
+     * Gets the distinct keys of the rows that have one.
+     *
+     * @param rowKeys the key of each row
+     * @param hasKey  true for the rows that have a key
+     * @return the distinct keys ascending, or null if there are more than MAX_VALUES
+     */
+    private static long[] distinct(long[] rowKeys, boolean[] hasKey) {
+        long[] sorted = new long[rowKeys.length];
+        int count = 0;
+        for (int row = 0; row < rowKeys.length; row++) {
+            if (hasKey[row]) {
+                sorted[count++] = rowKeys[row];
+            }
+        }
+        Arrays.sort(sorted, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || sorted[unique - 1] != sorted[i]) {
+                if (unique == MAX_VALUES) {
+                    return null;
+                }
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    /**
+     * Gets the number of words in a bitmap of rows.
+     *
+     * @param size number of rows
+     * @return words needed for one bit per row
+     */
+    static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+}
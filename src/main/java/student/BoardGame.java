@@ -1,9 +1,6 @@
 package student;
 
-
-import java.util.List;
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
+import java.util.Objects;
 
 /**
  * Data Class for the Board Game Object.
@@ -32,6 +29,8 @@ public class BoardGame {
     private final double averageRating;
     /** Year the game was published. */
     private final int yearPublished;
+    /** Hash code of the name and id, worked out once as both are final. */
+    private final int hash;
 
     /**
      * Constructor for the BoardGame object.
@@ -59,6 +58,7 @@ public class BoardGame {
         this.rank = rank;
         this.averageRating = averageRating;
         this.yearPublished = yearPublished;
+        this.hash = 31 * Objects.hashCode(name) + id;
     }
 
     /**
@@ -205,33 +205,39 @@ public class BoardGame {
     /**
      * Check if two BoardGame objects are equal.
      * 
-     * Two BoardGame objects are considered equal if all fields are equal, except for the following:
-     * - minPlayers - maxPlayers - maxPlayTime - minPlayTime - difficulty - rank - averageRating -
-     * yearPublished
+     * Two BoardGame objects are considered equal if their name and id are equal. The other
+     * fields (minPlayers, maxPlayers, maxPlayTime, minPlayTime, difficulty, rank, averageRating,
+     * yearPublished) are not compared.
+     * 
+     * The fields are compared directly rather than through reflection, as this is called on
+     * every insert into a hash based collection of games.
      * 
      * @param obj object to compare
      * @return true if the objects are equal, false otherwise
      */
     @Override
     public boolean equals(Object obj) {
-        return EqualsBuilder.reflectionEquals(this, obj, // exclude the following fields
-                List.of("minPlayers", "maxPlayers", "maxPlayTime", "minPlayTime", "difficulty",
-                        "rank", "averageRating", "yearPublished"));
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        BoardGame other = (BoardGame) obj;
+        return hash == other.hash && id == other.id && Objects.equals(name, other.name);
     }
 
     /**
      * Get the hash code of the object.
      * 
-     * The hash code is based on all fields, except for the following: - minPlayers - maxPlayers -
-     * maxPlayTime - minPlayTime - difficulty - rank - averageRating - yearPublished
+     * The hash code is based on the name and id only, matching equals. It is worked out once
+     * when the game is built.
      * 
      * @return hash code of the object
      */
     @Override
     public int hashCode() {
-        return HashCodeBuilder.reflectionHashCode(this, // exclude the following fields
-                List.of("minPlayers", "maxPlayers", "maxPlayTime", "minPlayTime", "difficulty",
-                        "rank", "averageRating", "yearPublished"));
+        return hash;
     }
 
 
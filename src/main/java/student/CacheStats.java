@@ -0,0 +1,101 @@
+package student;
+
+/**
+ * Snapshot of the counters of one of the planner's caches.
+ */
+public final class CacheStats {
+    /** lookups that found an entry. */
+    private final long hits;
+    /** lookups that found nothing. */
+    private final long misses;
+    /** entries in the cache. */
+    private final int size;
+    /** total weight of the entries. */
+    private final long weight;
+    /** most total weight the cache keeps. */
+    private final long capacity;
+
+    /**
+     * Constructor for the cache counters.
+     *
+     * @param hits     lookups that found an entry
+     * @param misses   lookups that found nothing
+     * @param size     entries in the cache
+     * @param weight   total weight of the entries
+     * @param capacity most total weight the cache keeps
+     */
+    CacheStats(long hits, long misses, int size, long weight, long capacity) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+        this.weight = weight;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the number of lookups that found an entry.
+     *
+     * @return cache hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that found nothing.
+     *
+     * @return cache misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of entries in the cache.
+     *
+     * @return entries cached
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the total weight of the entries. Unless the cache weighs its entries, every entry
+     * weighs 1.
+     *
+     * @return weight of the entries
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get the most total weight the cache keeps before it evicts the least recently used.
+     *
+     * @return cache capacity
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the share of lookups that found an entry.
+     *
+     * @return hits divided by lookups, 0 if nothing was looked up
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Get a one line summary of the counters.
+     *
+     * @return summary of the counters
+     */
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses (%.1f%%), %d entries, weight %d/%d", hits,
+                misses, getHitRate() * 100, size, weight, capacity);
+    }
+}
@@ -0,0 +1,84 @@
+package student;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that parses a range of csv lines in parallel.
+ *
+ * A range bigger than the split size is cut in half at the next line end, so no line
+ * is ever split between two tasks. The left half is forked, the right half is parsed
+ * by the current thread, and the two lists are joined in file order. That keeps the
+ * result in exactly the order a sequential read would produce.
+ */
+final class ChunkedGameParser extends RecursiveTask<List<BoardGame>> {
+    /** ranges smaller than this are parsed by a single thread. */
+    static final int SPLIT_SIZE = 1 << 20;
+
+    /** serial version, tasks are serializable. */
+    private static final long serialVersionUID = 1L;
+
+    /** the whole file. */
+    private final transient ByteBuffer bytes;
+    /** the header mapping, each leaf task builds its own parser from it. */
+    private final transient Map<GameData, Integer> columnMap;
+    /** first byte of the range, always the start of a line. */
+    private final int from;
+    /** byte after the range, always after a line end or the end of the file. */
+    private final int to;
+    /** counts loaded and skipped rows for this range. */
+    private final transient LoadStats stats = new LoadStats();
+
+    /**
+     * Builds a task for part of a file.
+     *
+     * @param bytes     the whole file
+     * @param columnMap the header mapping
+     * @param from      first byte of the range, at the start of a line
+     * @param to        byte after the range, after a line end or at the end of the file
+     */
+    ChunkedGameParser(ByteBuffer bytes, Map<GameData, Integer> columnMap, int from, int to) {
+        this.bytes = bytes;
+        this.columnMap = columnMap;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Get the counts for the range, only complete once the task is done.
+     *
+     * @return the load counts for this range
+     */
+    LoadStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Parses the range, splitting it if it is too big.
+     *
+     * @return the games in the range, in file order
+     */
+    @Override
+    protected List<BoardGame> compute() {
+        if (to - from > SPLIT_SIZE) {
+            int lineEnd = GameRowParser.indexOf(bytes, (byte) '\n', from + (to - from) / 2, to);
+            if (lineEnd >= 0 && lineEnd + 1 < to) {
+                ChunkedGameParser left = new ChunkedGameParser(bytes, columnMap, from, lineEnd + 1);
+                ChunkedGameParser right = new ChunkedGameParser(bytes, columnMap, lineEnd + 1, to);
+                left.fork();
+                List<BoardGame> rightGames = right.compute();
+                List<BoardGame> games = left.join();
+                games.addAll(rightGames);
+                stats.add(left.getStats());
+                stats.add(right.getStats());
+                return games;
+            }
+        }
+        List<BoardGame> games = new ArrayList<>();
+        new GameRowParser(columnMap).parseLines(bytes, from, to, true, games, stats);
+        return games;
+    }
+}
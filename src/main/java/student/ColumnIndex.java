@@ -0,0 +1,319 @@
+package student;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+
+/**
+ * The rows of a table sorted by one numeric column, so range and equality conditions on the
+ * column can be answered with a binary search instead of a scan.
+ *
+ * Rows with the same value keep their row order. Ratings and difficulties that are NaN never
+ * match a comparison, so they are sorted last and left out of every range. Rows a refresh
+ * deleted from the table are not in the index.
+ *
+ * The index also gives each row the dense rank of its value: 0 for the smallest value, 1 for
+ * the next one and so on. Ranks compare the same way the values do, but fit in as few bits
+ * as the number of distinct values needs, so several can be packed into one sort key.
+ */
+final class ColumnIndex {
+    /** the rows, sorted by value. */
+    private final int[] rows;
+    /** the column values if it is an int column, else null. */
+    private final int[] ints;
+    /** the column values if it is a double column, else null. */
+    private final double[] doubles;
+    /** number of rows whose value can match, the NaN values come after them. */
+    private final int end;
+    /** the rank of the value of each row, 0 for deleted rows. */
+    private final int[] ranks;
+    /** number of distinct values. */
+    private final int distinct;
+    /** bitmap of the positions in rows where a new value starts. */
+    private final long[] valueStarts;
+
+    /**
+     * Constructor for the index.
+     *
+     * @param rows    the rows sorted by value
+     * @param ints    the int column, or null
+     * @param doubles the double column, or null
+     * @param size    number of rows in the table, deleted rows included
+     */
+    private ColumnIndex(int[] rows, int[] ints, double[] doubles, int size) {
+        this.rows = rows;
+        this.ints = ints;
+        this.doubles = doubles;
+        int last = rows.length;
+        while (doubles != null && last > 0 && Double.isNaN(doubles[rows[last - 1]])) {
+            last--;
+        }
+        this.end = last;
+        this.ranks = new int[size];
+        this.valueStarts = new long[BitmapIndex.words(rows.length)];
+        int rank = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (i > 0 && !sameValue(rows[i - 1], rows[i])) {
+                rank++;
+                valueStarts[i >>> 6] |= 1L << i;
+            }
+            ranks[rows[i]] = rank;
+        }
+        this.distinct = rows.length == 0 ? 0 : rank + 1;
+    }
+
+    /**
+     * Builds the index of a numeric column.
+     *
+     * @param table  the table, with no deleted rows
+     * @param column the column, any numeric column but ID
+     * @return the index
+     */
+    static ColumnIndex of(GameTable table, GameData column) {
+        int[] ints = table.intColumn(column);
+        if (ints == null) {
+            return new ColumnIndex(sortRows(table.doubleColumn(column)), null,
+                    table.doubleColumn(column), table.size());
+        }
+        // value in the high half and row in the low half, so one primitive sort orders by
+        // value and then by row
+        long[] keys = new long[ints.length];
+        for (int row = 0; row < ints.length; row++) {
+            keys[row] = (long) ints[row] << 32 | row;
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = (int) keys[i];
+        }
+        return new ColumnIndex(sorted, ints, null, table.size());
+    }
+
+    /**
+     * Builds the index of a patched table from the index of the table it was patched from.
+     *
+     * The rows that were deleted or replaced are dropped, and the replaced and added rows
+     * are sorted on their own and merged in, so only they are compared. Ranks are counted
+     * again in one pass.
+     *
+     * @param table   the patched table
+     * @param column  the column of this index
+     * @param removed the rows of the old table that were deleted or replaced
+     * @param fresh   the rows of the patched table that were replaced or added
+     * @return the index of the patched table
+     */
+    ColumnIndex patch(GameTable table, GameData column, long[] removed, int[] fresh) {
+        int[] newInts = table.intColumn(column);
+        double[] newDoubles = table.doubleColumn(column);
+        IntBinaryOperator order = (row1, row2) -> {
+            int compare = newInts != null ? Integer.compare(newInts[row1], newInts[row2])
+                    : Double.compare(newDoubles[row1], newDoubles[row2]);
+            return compare != 0 ? compare : Integer.compare(row1, row2);
+        };
+        return new ColumnIndex(Sorting.patchRows(rows, removed, fresh, order), newInts,
+                newDoubles, table.size());
+    }
+
+    /**
+     * Sorts rows by a double column, in the order of Double.compare, with ties in row order.
+     *
+     * The distinct values are sorted as primitives, then the rows are counting sorted by the
+     * position of their value.
+     *
+     * @param values the column
+     * @return the rows, sorted
+     */
+    private static int[] sortRows(double[] values) {
+        double[] distinct = values.clone();
+        Arrays.sort(distinct); // same order as Double.compare, NaN last
+        int unique = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (unique == 0 || Double.compare(distinct[unique - 1], distinct[i]) != 0) {
+                distinct[unique++] = distinct[i];
+            }
+        }
+        int[] position = new int[values.length];
+        int[] starts = new int[unique + 1];
+        for (int row = 0; row < values.length; row++) {
+            position[row] = Arrays.binarySearch(distinct, 0, unique, values[row]);
+            starts[position[row] + 1]++;
+        }
+        for (int i = 0; i < unique; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] sorted = new int[values.length];
+        for (int row = 0; row < values.length; row++) {
+            sorted[starts[position[row]]++] = row;
+        }
+        return sorted;
+    }
+
+    /**
+     * Get the rank of the value of each row, see the class comment.
+     *
+     * @return the ranks by row, not to be changed
+     */
+    int[] ranks() {
+        return ranks;
+    }
+
+    /**
+     * Get the number of distinct values, which is one more than the largest rank.
+     *
+     * @return the number of distinct values
+     */
+    int distinct() {
+        return distinct;
+    }
+
+    /**
+     * Finds the rows that match a condition.
+     *
+     * @param condition a condition on the column of the index
+     * @return the exact range of matching rows, or null if the operation can not be answered
+     *         from the index
+     */
+    RowRange range(FilterCondition condition) {
+        switch (condition.getOperation()) {
+            case EQUALS:
+                return new RowRange(rows, lowerBound(condition), upperBound(condition), true);
+            case GREATER_THAN:
+                return new RowRange(rows, upperBound(condition), end, true);
+            case GREATER_THAN_EQUALS:
+                return new RowRange(rows, lowerBound(condition), end, true);
+            case LESS_THAN:
+                return new RowRange(rows, 0, lowerBound(condition), true);
+            case LESS_THAN_EQUALS:
+                return new RowRange(rows, 0, upperBound(condition), true);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Walks the rows in sorted order, collecting the first ones that pass a test.
+     *
+     * The order is the one a stable sort of every row in row order gives: by value, with
+     * NaN last when ascending, and rows with the same value in row order either way. The
+     * walk stops as soon as enough rows have been found.
+     *
+     * @param test      the test the rows have to pass
+     * @param ascending true for smallest value first
+     * @param count     the number of rows wanted
+     * @return up to count rows, in sorted order
+     */
+    int[] first(IntPredicate test, boolean ascending, int count) {
+        int[] found = new int[Math.min(count, rows.length)];
+        int size = 0;
+        if (ascending) {
+            for (int i = 0; i < rows.length && size < found.length; i++) {
+                if (test.test(rows[i])) {
+                    found[size++] = rows[i];
+                }
+            }
+            return Arrays.copyOf(found, size);
+        }
+        // runs of equal values from the largest down, each run still in row order
+        int to = rows.length;
+        while (to > 0 && size < found.length) {
+            int from = to - 1;
+            while (from > 0 && !BitmapIndex.contains(valueStarts, from)) {
+                from--;
+            }
+            for (int i = from; i < to && size < found.length; i++) {
+                if (test.test(rows[i])) {
+                    found[size++] = rows[i];
+                }
+            }
+            to = from;
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    /**
+     * Sorts rows by walking the index and keeping the rows that are among them, without
+     * comparing any values.
+     *
+     * @param rows      the rows, in row order
+     * @param ascending true for smallest value first
+     * @return the rows in the order of a stable sort, see {@link #first(IntPredicate,
+     *         boolean, int)}
+     */
+    int[] sort(int[] rows, boolean ascending) {
+        long[] bits = new long[BitmapIndex.words(ranks.length)];
+        for (int row : rows) {
+            bits[row >>> 6] |= 1L << row;
+        }
+        return first(row -> BitmapIndex.contains(bits, row), ascending, rows.length);
+    }
+
+    /**
+     * Check if two rows have the same value, the way the sort compares them.
+     *
+     * @param row1 the first row
+     * @param row2 the second row
+     * @return true if Integer.compare or Double.compare says they are equal
+     */
+    private boolean sameValue(int row1, int row2) {
+        return ints != null ? ints[row1] == ints[row2]
+                : Double.compare(doubles[row1], doubles[row2]) == 0;
+    }
+
+    /**
+     * Finds the first position whose value is not less than the value of a condition.
+     *
+     * @param condition the condition
+     * @return the position, end if every value is less
+     */
+    private int lowerBound(FilterCondition condition) {
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lessThan(rows[mid], condition, false)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first position whose value is greater than the value of a condition.
+     *
+     * @param condition the condition
+     * @return the position, end if no value is greater
+     */
+    private int upperBound(FilterCondition condition) {
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lessThan(rows[mid], condition, true)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the value of a row with the value of a condition, the same way the filter
+     * compares them.
+     *
+     * @param row       the row
+     * @param condition the condition
+     * @param orEqual   true to also accept an equal value
+     * @return true if the row's value is less than (or equal to) the condition's value
+     */
+    private boolean lessThan(int row, FilterCondition condition, boolean orEqual) {
+        if (ints != null) {
+            int value = condition.getIntValue();
+            return orEqual ? ints[row] <= value : ints[row] < value;
+        }
+        double value = condition.getDoubleValue();
+        return orEqual ? doubles[row] <= value : doubles[row] < value;
+    }
+}
@@ -0,0 +1,237 @@
+package student;
+
+/**
+ * Summary of the values of a numeric column: the smallest and largest value and a histogram
+ * of equal width buckets between them.
+ *
+ * The stats are only used to guess what share of the rows a condition keeps, so the
+ * conditions of a filter can be tested most selective first. A guess never changes which
+ * rows match, only how soon a row that fails is dropped.
+ */
+final class ColumnStats {
+    /** number of buckets in the histogram. */
+    private static final int BUCKETS = 64;
+
+    /** number of rows, not counting deleted rows. */
+    private final int size;
+    /** true if the column holds whole numbers. */
+    private final boolean whole;
+    /** smallest finite value, 0 if there are none. */
+    private final double min;
+    /** largest finite value, 0 if there are none. */
+    private final double max;
+    /** width of a bucket, 0 if every finite value is the same. */
+    private final double width;
+    /** rows in each bucket, infinite values are in the first or last bucket. */
+    private final int[] counts;
+    /** rows that are not NaN. */
+    private final int numbers;
+
+    /**
+     * Constructor for the stats.
+     *
+     * @param size    number of rows, not counting deleted rows
+     * @param whole   true for int columns
+     * @param min     smallest finite value
+     * @param max     largest finite value
+     * @param counts  rows in each bucket
+     * @param numbers rows that are not NaN
+     */
+    private ColumnStats(int size, boolean whole, double min, double max, int[] counts,
+            int numbers) {
+        this.size = size;
+        this.whole = whole;
+        this.min = min;
+        this.max = max;
+        this.width = (max - min) / BUCKETS;
+        this.counts = counts;
+        this.numbers = numbers;
+    }
+
+    /**
+     * Collects the stats of a numeric column.
+     *
+     * @param table  the table
+     * @param column the column, any numeric column
+     * @return the stats
+     */
+    static ColumnStats of(GameTable table, GameData column) {
+        int[] ints = table.intColumn(column);
+        double[] values = ints == null ? table.doubleColumn(column) : null;
+        int size = table.size();
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < size; row++) {
+            double value = ints != null ? ints[row] : values[row];
+            if (Double.isFinite(value) && !table.isDeleted(row)) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        if (min > max) {
+            min = 0;
+            max = 0;
+        }
+        int[] counts = new int[BUCKETS];
+        int numbers = 0;
+        double width = (max - min) / BUCKETS;
+        for (int row = 0; row < size; row++) {
+            double value = ints != null ? ints[row] : values[row];
+            if (!Double.isNaN(value) && !table.isDeleted(row)) {
+                counts[bucket(value, min, width)]++;
+                numbers++;
+            }
+        }
+        return new ColumnStats(table.count(), ints != null, min, max, counts, numbers);
+    }
+
+    /**
+     * Gets the stats of a patched table from the stats of the table it was patched from.
+     *
+     * The values of the removed rows are taken out of their buckets and the fresh values are
+     * put in. The range is kept even if its smallest or largest value is gone, which only
+     * makes the guesses a little coarser, but a fresh finite value outside it means the
+     * buckets no longer fit, and the stats are collected again.
+     *
+     * @param old     the table the stats are for
+     * @param table   the patched table
+     * @param column  the column of the stats
+     * @param removed the rows of the old table that were deleted or replaced
+     * @param fresh   the rows of the patched table that were replaced or added
+     * @return the stats of the patched table
+     */
+    ColumnStats patch(GameTable old, GameTable table, GameData column, long[] removed,
+            int[] fresh) {
+        for (int row : fresh) {
+            double value = value(table, column, row);
+            if (Double.isFinite(value) && (value < min || value > max)) {
+                return of(table, column);
+            }
+        }
+        int[] patched = counts.clone();
+        int patchedNumbers = numbers;
+        for (int w = 0; w < removed.length; w++) {
+            for (long word = removed[w]; word != 0; word &= word - 1) {
+                double value = value(old, column, w << 6 | Long.numberOfTrailingZeros(word));
+                if (!Double.isNaN(value)) {
+                    patched[bucket(value, min, width)]--;
+                    patchedNumbers--;
+                }
+            }
+        }
+        for (int row : fresh) {
+            double value = value(table, column, row);
+            if (!Double.isNaN(value)) {
+                patched[bucket(value, min, width)]++;
+                patchedNumbers++;
+            }
+        }
+        return new ColumnStats(table.count(), whole, min, max, patched, patchedNumbers);
+    }
+
+    /**
+     * Gets the value of a row of a numeric column as a double.
+     *
+     * @param table  the table
+     * @param column the column
+     * @param row    the row
+     * @return the value
+     */
+    private static double value(GameTable table, GameData column, int row) {
+        int[] ints = table.intColumn(column);
+        return ints != null ? ints[row] : table.doubleColumn(column)[row];
+    }
+
+    /**
+     * Guesses the share of the rows that match a condition on the column.
+     *
+     * @param condition the condition
+     * @return the estimated share of matching rows, between 0 and 1
+     */
+    double selectivity(FilterCondition condition) {
+        if (size == 0) {
+            return 0;
+        }
+        double value = condition.getDoubleValue();
+        switch (condition.getOperation()) {
+            case LESS_THAN:
+                return below(value) / size;
+            case LESS_THAN_EQUALS:
+                return below(whole ? value + 1 : value) / size;
+            case GREATER_THAN:
+                return (numbers - below(whole ? value + 1 : value)) / size;
+            case GREATER_THAN_EQUALS:
+                return (numbers - below(value)) / size;
+            case EQUALS:
+                return equal(value) / size;
+            case NOT_EQUALS:
+                return (size - equal(value)) / size;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Estimates the rows with a value below a value, spreading the rows of a bucket evenly
+     * over it.
+     *
+     * @param value the value
+     * @return the estimated number of rows
+     */
+    private double below(double value) {
+        if (value <= min) {
+            return 0;
+        }
+        if (value > max || width == 0) {
+            return numbers;
+        }
+        double position = (value - min) / width;
+        int full = Math.min((int) position, BUCKETS - 1);
+        double rows = 0;
+        for (int i = 0; i < full; i++) {
+            rows += counts[i];
+        }
+        return rows + counts[full] * (position - full);
+    }
+
+    /**
+     * Estimates the rows with a value, spreading the rows of a bucket evenly over the whole
+     * numbers in it, or over its width for double columns.
+     *
+     * @param value the value
+     * @return the estimated number of rows
+     */
+    private double equal(double value) {
+        if (value < min || value > max) {
+            return 0;
+        }
+        int rows = counts[bucket(value, min, width)];
+        return width <= 1 ? rows : rows / width;
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value the value, not NaN
+     * @param min   smallest finite value
+     * @param width width of a bucket
+     * @return the bucket, infinite values go to the first or last bucket
+     */
+    private static int bucket(double value, double min, double width) {
+        if (width == 0) {
+            return 0;
+        }
+        int bucket = (int) ((value - min) / width);
+        return Math.max(0, Math.min(BUCKETS - 1, bucket));
+    }
+
+    /**
+     * Get a short description of the stats, for debugging.
+     *
+     * @return the range and number of values
+     */
+    @Override
+    public String toString() {
+        return String.format("[%s, %s] %d of %d rows", min, max, numbers, size);
+    }
+}
@@ -1,5 +1,6 @@
 package student;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
@@ -21,6 +22,9 @@ public class ConsoleApp {
     private static final Scanner IN = new Scanner(System.in);
     /** Default name to save the game list to. */
     private static final String DEFAULT_FILENAME = "games_list.txt";
+    /** most names suggested by the complete command. */
+    private static final int COMPLETE_LIMIT = 10;
+
     /** random number generator only needs to be built once. */
     private static final Random RND = new Random();
     /** scanner to help with processing the command string. */
@@ -64,6 +68,9 @@ public class ConsoleApp {
                 case CMD_EASTER_EGG:
                     randomNumber();
                     break;
+                case CMD_COMPLETE:
+                    processComplete();
+                    break;
                 case INVALID:
                 default:
                     printOutput("%s%n", ConsoleText.INVALID);
@@ -83,7 +90,7 @@ public class ConsoleApp {
      * Generate a random number based on the current filter.
      */
     private void randomNumber() {
-        int max = (int) planner.filter("").count();
+        int max = filterByName().size();
         if (max > 0) {
             int random = RND.nextInt(max) + 1; // random is 0-(max-1) so add 1.
             printOutput("%s %d%n", ConsoleText.EASTER_EGG, random);
@@ -91,6 +98,23 @@ public class ConsoleApp {
         // else do nothing, not a secret easter egg if filter is empty.
     }
 
+    /**
+     * Process the complete command, suggesting game names that start with the text given.
+     */
+    private void processComplete() {
+        String prefix = remainder();
+        List<BoardGame> games = planner instanceof Planner
+                ? ((Planner) planner).complete(prefix, COMPLETE_LIMIT) : Collections.emptyList();
+        if (games.isEmpty()) {
+            printOutput("%s %s%n", ConsoleText.NO_COMPLETIONS, prefix);
+            return;
+        }
+        int counter = 1;
+        for (BoardGame game : games) {
+            printOutput("%d: %s%n", counter++, game.toStringWithInfo(GameData.RANK));
+        }
+    }
+
     /**
      * Process the help command.
      */
@@ -115,7 +139,7 @@ public class ConsoleApp {
      * Process the filter command.
      */
     private void processFilter() {
-        Stream<BoardGame> result = null;
+        List<BoardGame> result;
         GameData sortON = GameData.NAME; // default
 
         if (current.hasNext()) {
@@ -132,52 +156,140 @@ public class ConsoleApp {
                 printOutput("%s%n", ConsoleText.FILTERED_CLEAR);
                 return; // leave early.
             }
+            int limit = -1; // no limit
+            int limitAt = limitStart(filter);
+            if (limitAt >= 0) {
+                try {
+                    limit = Integer.parseInt(filter.substring(filter.lastIndexOf(
+                            ConsoleText.CMD_LIMIT_OPTION.toString())
+                            + ConsoleText.CMD_LIMIT_OPTION.toString().length()));
+                } catch (NumberFormatException e) {
+                    // all digits, but too big for an int
+                    printOutput("%s%n", ConsoleText.INVALID);
+                    return; // leave early.
+                }
+                filter = filter.substring(0, limitAt);
+            }
+            List<SortKey> order = List.of(new SortKey(sortON, true)); // default
             if (filter.contains(ConsoleText.CMD_SORT_OPTION.toString())) {
                 // break it up, figure out sort
-                boolean ascending = true; // default
                 String[] parts = filter.split(ConsoleText.CMD_SORT_OPTION.toString());
                 if (parts.length == 2) {
-                    String sort = parts[1];
-                    if (sort.contains(ConsoleText.CMD_SORT_OPTION_DIRECTION_ASC.toString())) {
-                        ascending = true;
-                        sort = sort.substring(0,
-                                sort.indexOf(ConsoleText.CMD_SORT_OPTION_DIRECTION_ASC.toString()));
-                    } else if (sort
-                            .contains(ConsoleText.CMD_SORT_OPTION_DIRECTION_DESC.toString())) {
-                        ascending = false;
-                        sort = sort.substring(0, sort
-                                .indexOf(ConsoleText.CMD_SORT_OPTION_DIRECTION_DESC.toString()));
-                    }
                     try {
-                        sortON = GameData.fromString(sort);
+                        order = parseSort(parts[1]);
                     } catch (IllegalArgumentException e) {
                         printOutput("%s%n", ConsoleText.INVALID);
                         return; // leave early.
                     }
+                    sortON = order.get(0).getColumn();
                 }
+                filter = parts[0];
+            }
 
-                result = planner.filter(parts[0], sortON, ascending);  // NOTICE: sortON and ascending are used here.
+            if (planner instanceof Planner) {
+                // only the games shown are sorted when there is a limit
+                result = limit < 0 ? ((Planner) planner).filterList(filter, order)
+                        : ((Planner) planner).filterList(filter, order, 0, limit);
             } else {
-                result = planner.filter(filter); // default sort
+                // NOTICE: IPlanner only sorts on the first column.
+                Stream<BoardGame> games = planner.filter(filter, sortON,
+                        order.get(0).isAscending());
+                result = (limit < 0 ? games : games.limit(limit)).toList();
             }
         } else {
             printOutput("%s%n", ConsoleText.NO_FILTER);
-            result = planner.filter("");
+            result = filterByName();
+        }
+        printFilterList(result, sortON);
+    }
+
+    /**
+     * Finds the limit:n option in filter text with the spaces removed. It is only taken as
+     * the option when it ends the text, n is all digits, and it comes after a comma, or at
+     * the very start, or at the end of the sort: option. Anywhere else, as in name~=limit:2,
+     * it is part of a filter value.
+     *
+     * @param filter the filter text, lower case and without spaces
+     * @return where the option starts, including the comma before it, or -1 if there is none
+     */
+    private static int limitStart(String filter) {
+        String option = ConsoleText.CMD_LIMIT_OPTION.toString();
+        int at = filter.lastIndexOf(option);
+        if (at < 0) {
+            return -1;
+        }
+        String count = filter.substring(at + option.length());
+        if (count.isEmpty() || !count.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            return -1;
+        }
+        if (at == 0) {
+            return 0;
+        }
+        if (filter.charAt(at - 1) == ',') {
+            return at - 1;
+        }
+        int sortAt = filter.indexOf(ConsoleText.CMD_SORT_OPTION.toString());
+        if (sortAt >= 0 && sortAt + ConsoleText.CMD_SORT_OPTION.toString().length() < at) {
+            return at;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the current games sorted by name, the way planner.filter("") does.
+     * The Planner returns a list that only builds the games that are read from it.
+     *
+     * @return the current games, sorted by name.
+     */
+    private List<BoardGame> filterByName() {
+        if (planner instanceof Planner) {
+            return ((Planner) planner).filterList("", List.of(new SortKey(GameData.NAME, true)));
+        }
+        return planner.filter("").toList();
+    }
+
+    /**
+     * Parses the columns of a sort option, one or more columns separated by commas, each with
+     * an optional asc or desc, like "ratingdesc,difficulty:asc,name" once spaces are removed.
+     *
+     * @param sort the text after the sort option
+     * @return the sort keys, in order
+     * @throws IllegalArgumentException if a column is not valid
+     */
+    private static List<SortKey> parseSort(String sort) {
+        List<SortKey> order = new ArrayList<>();
+        for (String key : sort.split(",")) {
+            boolean ascending = true;
+            String column = key;
+            if (key.contains(ConsoleText.CMD_SORT_OPTION_DIRECTION_ASC.toString())) {
+                column = key.substring(0,
+                        key.indexOf(ConsoleText.CMD_SORT_OPTION_DIRECTION_ASC.toString()));
+            } else if (key.contains(ConsoleText.CMD_SORT_OPTION_DIRECTION_DESC.toString())) {
+                ascending = false;
+                column = key.substring(0,
+                        key.indexOf(ConsoleText.CMD_SORT_OPTION_DIRECTION_DESC.toString()));
+            }
+            if (column.endsWith(":")) {
+                column = column.substring(0, column.length() - 1);
+            }
+            order.add(new SortKey(GameData.fromString(column), ascending));
+        }
+        if (order.isEmpty()) {
+            throw new IllegalArgumentException("No sort column");
         }
-        printFilterStream(result, sortON);
+        return order;
     }
 
     /**
-     * Print the filtered stream of games.
+     * Print the filtered list of games.
      * 
-     * @param games  the stream of games to print.
+     * @param games  the list of games to print.
      * @param sortON also is the column used for 'extra info' based on the sort
      *               type.
      */
-    private static void printFilterStream(Stream<BoardGame> games, GameData sortON) {
+    private static void printFilterList(List<BoardGame> games, GameData sortON) {
         int counter = 1;
-        List<BoardGame> gameList = games != null ? games.toList() : Collections.emptyList();
-        for (BoardGame game : gameList) {
+        for (BoardGame game : games) {
             printOutput("%d: %s%n", counter++, game.toStringWithInfo(sortON));
         }
     }
@@ -203,7 +315,12 @@ public class ConsoleApp {
                         break;
                     }
                     try {
-                        gameList.addToList(toAdd, planner.filter(""));
+                        List<BoardGame> games = filterByName();
+                        if (gameList instanceof GameList) {
+                            ((GameList) gameList).addToList(toAdd, games);
+                        } else {
+                            gameList.addToList(toAdd, games.stream());
+                        }
                     } catch (IllegalArgumentException e) {
                         printOutput("%s %s%n", ConsoleText.INVALID_LIST, toAdd);
                     }
@@ -328,13 +445,15 @@ public class ConsoleApp {
         /** various commands and text. */
         WELCOME, HELP, INVALID, GOODBYE, PROMPT, NO_FILTER, NO_GAMES_LIST, FILTERED_CLEAR, LIST_HELP, FILTER_HELP,
         /** commands continued. */
-        INVALID_LIST, EASTER_EGG, CMD_EASTER_EGG,
+        INVALID_LIST, EASTER_EGG, CMD_EASTER_EGG, CMD_COMPLETE, NO_COMPLETIONS,
         /** commands general. */
         CMD_EXIT, CMD_HELP, CMD_QUESTION, CMD_FILTER, CMD_LIST,
         /** commands specific to lists and filters. */
         CMD_SHOW, CMD_ADD, CMD_REMOVE, CMD_CLEAR, CMD_SAVE,
         /** more options on commands. */
-        CMD_OPTION_ALL, CMD_SORT_OPTION, CMD_SORT_OPTION_DIRECTION_ASC, CMD_SORT_OPTION_DIRECTION_DESC;
+        CMD_OPTION_ALL, CMD_SORT_OPTION, CMD_SORT_OPTION_DIRECTION_ASC, CMD_SORT_OPTION_DIRECTION_DESC,
+        /** option to show only the first games of a filter. */
+        CMD_LIMIT_OPTION;
 
         /** load the files on class load. */
         private static final Properties CTEXT = new Properties();
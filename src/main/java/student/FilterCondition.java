@@ -0,0 +1,233 @@
+package student;
+
+import java.util.function.IntPredicate;
+
+/**
+ * One compiled condition of a filter, such as {@code minplayers>=4}.
+ *
+ * The column and operation are resolved, and the value is parsed into the type the column
+ * needs when the condition is compiled, so testing a game never parses or allocates. A
+ * condition does not depend on any table, and is bound to one with {@link #bind(GameTable)}
+ * right before it is used.
+ *
+ * The answers are the same as {@link Filters#filter(BoardGame, GameData, Operations, String)}
+ * for the same column, operation and value.
+ */
+final class FilterCondition {
+    /** the column to filter on. */
+    private final GameData column;
+    /** the operation. */
+    private final Operations op;
+    /** the value with spaces removed, as written. */
+    private final String value;
+    /** the value in lower case, for name comparisons. */
+    private final String lowerValue;
+    /** the value parsed for int columns. */
+    private final int intValue;
+    /** the value parsed for double columns. */
+    private final double doubleValue;
+
+    /**
+     * Builds a condition, the value must already be checked to be a number for any column
+     * but NAME.
+     *
+     * @param column the column to filter on
+     * @param op     the operation
+     * @param value  the value with spaces removed
+     */
+    FilterCondition(GameData column, Operations op, String value) {
+        this.column = column;
+        this.op = op;
+        this.value = value;
+        this.lowerValue = value.toLowerCase();
+        boolean number = column != GameData.NAME;
+        this.intValue = number ? Integer.parseInt(value) : 0;
+        this.doubleValue = number ? Double.parseDouble(value) : 0;
+    }
+
+    /**
+     * Get the column of the condition.
+     *
+     * @return the column
+     */
+    GameData getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the operation of the condition.
+     *
+     * @return the operation
+     */
+    Operations getOperation() {
+        return op;
+    }
+
+    /**
+     * Get the value of the condition with spaces removed.
+     *
+     * @return the value as written
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * Get the value of the condition in lower case, as name ~= compares it.
+     *
+     * @return the value in lower case
+     */
+    String getLowerValue() {
+        return lowerValue;
+    }
+
+    /**
+     * Get the value parsed for an int column.
+     *
+     * @return the int value, 0 for NAME conditions
+     */
+    int getIntValue() {
+        return intValue;
+    }
+
+    /**
+     * Get the value parsed for a double column.
+     *
+     * @return the double value, 0 for NAME conditions
+     */
+    double getDoubleValue() {
+        return doubleValue;
+    }
+
+    /**
+     * Check if the condition can not match any game, whatever the values.
+     *
+     * @return true for conditions on ID, and ~= on a numeric column
+     */
+    boolean neverMatches() {
+        return column == GameData.ID || column != GameData.NAME && op == Operations.CONTAINS;
+    }
+
+    /**
+     * Binds the condition to a table.
+     *
+     * The column array and the operation are picked once here, so the predicate is a single
+     * array read and comparison per row.
+     *
+     * @param table the table the rows come from
+     * @return a predicate on the rows of the table
+     */
+    IntPredicate bind(GameTable table) {
+        switch (column) {
+            case NAME:
+                return bindName(table);
+            case RATING:
+            case DIFFICULTY:
+                return bindDouble(table.doubleColumn(column));
+            case ID:
+                // id is not used for filtering
+                return row -> false;
+            default:
+                return bindInt(table.intColumn(column));
+        }
+    }
+
+    /**
+     * Binds a condition on an int column.
+     *
+     * @param values the column
+     * @return a predicate on the rows
+     */
+    private IntPredicate bindInt(int[] values) {
+        int val = intValue;
+        switch (op) {
+            case EQUALS:
+                return row -> values[row] == val;
+            case NOT_EQUALS:
+                return row -> values[row] != val;
+            case GREATER_THAN:
+                return row -> values[row] > val;
+            case LESS_THAN:
+                return row -> values[row] < val;
+            case GREATER_THAN_EQUALS:
+                return row -> values[row] >= val;
+            case LESS_THAN_EQUALS:
+                return row -> values[row] <= val;
+            default:
+                // for other operations, return false
+                return row -> false;
+        }
+    }
+
+    /**
+     * Binds a condition on a double column.
+     *
+     * @param values the column
+     * @return a predicate on the rows
+     */
+    private IntPredicate bindDouble(double[] values) {
+        double val = doubleValue;
+        switch (op) {
+            case EQUALS:
+                return row -> values[row] == val;
+            case NOT_EQUALS:
+                return row -> values[row] != val;
+            case GREATER_THAN:
+                return row -> values[row] > val;
+            case LESS_THAN:
+                return row -> values[row] < val;
+            case GREATER_THAN_EQUALS:
+                return row -> values[row] >= val;
+            case LESS_THAN_EQUALS:
+                return row -> values[row] <= val;
+            default:
+                // for other operations, return false
+                return row -> false;
+        }
+    }
+
+    /**
+     * Binds a condition on the name column.
+     *
+     * Uses the names the table keeps with spaces removed and in lower case, so names are
+     * not changed on every test.
+     *
+     * @param table the table the rows come from
+     * @return a predicate on the rows
+     */
+    private IntPredicate bindName(GameTable table) {
+        String[] names = table.filterNames();
+        String[] lower = table.lowerFilterNames();
+        String val = value;
+        String lowerVal = lowerValue;
+        switch (op) {
+            case EQUALS:
+                return row -> names[row].equalsIgnoreCase(val);
+            case NOT_EQUALS:
+                return row -> !names[row].equalsIgnoreCase(val);
+            case CONTAINS:
+                return row -> lower[row].contains(lowerVal);
+            case GREATER_THAN:
+                return row -> lower[row].compareTo(lowerVal) > 0;
+            case LESS_THAN:
+                return row -> lower[row].compareTo(lowerVal) < 0;
+            case GREATER_THAN_EQUALS:
+                return row -> lower[row].compareTo(lowerVal) >= 0;
+            case LESS_THAN_EQUALS:
+                return row -> lower[row].compareTo(lowerVal) <= 0;
+            default:
+                // for other operations, return false
+                return row -> false;
+        }
+    }
+
+    /**
+     * Get the condition written in its canonical form.
+     *
+     * @return the column name, operator and value, like MIN_PLAYERS>=4
+     */
+    @Override
+    public String toString() {
+        return column.name() + op.getOperator() + value;
+    }
+}
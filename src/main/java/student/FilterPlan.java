@@ -0,0 +1,609 @@
+package student;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+
+/**
+ * A filter string compiled into a list of typed conditions that are ANDed together.
+ *
+ * Compiling walks the filter once: it splits the conditions on commas, spots the operator,
+ * drops spaces, resolves the column and parses the value. Applying the plan is then a single
+ * pass over the rows that tests every condition in turn and stops at the first one that fails,
+ * so nothing is parsed, allocated or copied per row. The conditions are tested in the order
+ * of the share of rows the {@link ColumnStats} guess they keep, fewest first, so most rows
+ * are dropped by the first test whatever order the conditions were written in.
+ *
+ * Compiling keeps the rules the planner has always had:
+ * <ul>
+ * <li>the operator is the first of >=, <=, >, <, ==, !=, ~= found in the condition</li>
+ * <li>a single condition that is not valid leaves the games as they are (the plan is
+ * rejected)</li>
+ * <li>with several conditions, the ones before the first invalid condition are applied, and
+ * the rest are dropped</li>
+ * </ul>
+ */
+final class FilterPlan {
+    /** operators in the order they are looked for. */
+    private static final Operations[] OPERATOR_ORDER = {Operations.GREATER_THAN_EQUALS,
+        Operations.LESS_THAN_EQUALS, Operations.GREATER_THAN, Operations.LESS_THAN,
+        Operations.EQUALS, Operations.NOT_EQUALS, Operations.CONTAINS};
+    /** an index is used if its range holds at most 1 / INDEX_SHARE of the rows. */
+    private static final int INDEX_SHARE = 4;
+    /** bitmaps are used if at least 1 / BITMAP_SHARE of the rows are being filtered. */
+    private static final int BITMAP_SHARE = 16;
+    /** guessed share of rows kept by name ==. */
+    private static final double NAME_EQUALS_SHARE = 0.001;
+    /** guessed share of rows kept by name conditions other than == and !=. */
+    private static final double NAME_SHARE = 0.5;
+    /** the plan for an empty filter. */
+    private static final FilterPlan EMPTY = new FilterPlan(new FilterCondition[0], false, true);
+    /** the plan for a single invalid condition. */
+    private static final FilterPlan REJECTED = new FilterPlan(new FilterCondition[0], true, false);
+
+    /** the conditions, all must match. */
+    private final FilterCondition[] conditions;
+    /** true if the filter was a single invalid condition, so nothing should change. */
+    private final boolean rejected;
+    /** true if every condition of the filter was valid, so none were dropped. */
+    private final boolean complete;
+    /** the conditions in canonical form and sorted, equal for plans that match the same rows. */
+    private final String key;
+
+    /**
+     * Constructor for a plan.
+     *
+     * @param conditions the conditions, all must match
+     * @param rejected   true if the filter should not change anything
+     * @param complete   true if no condition was dropped
+     */
+    private FilterPlan(FilterCondition[] conditions, boolean rejected, boolean complete) {
+        this.conditions = conditions;
+        this.rejected = rejected;
+        this.complete = complete;
+        String[] canonical = new String[conditions.length];
+        for (int i = 0; i < conditions.length; i++) {
+            canonical[i] = conditions[i].toString();
+        }
+        Arrays.sort(canonical);
+        this.key = String.join(",", canonical);
+    }
+
+    /**
+     * Compiles a filter string.
+     *
+     * @param filter the filter, conditions separated by commas
+     * @return the compiled plan
+     */
+    static FilterPlan compile(String filter) {
+        if (filter.isEmpty()) {
+            return EMPTY;
+        }
+        if (filter.indexOf(',') < 0) {
+            FilterCondition condition = compileCondition(filter);
+            return condition == null ? REJECTED
+                    : new FilterPlan(new FilterCondition[] {condition}, false, true);
+        }
+
+        List<String> parts = split(filter, ",");
+        List<FilterCondition> valid = new ArrayList<>();
+        for (String part : parts) {
+            FilterCondition condition = compileCondition(part);
+            if (condition == null) {
+                break;
+            }
+            valid.add(condition);
+        }
+        return new FilterPlan(valid.toArray(new FilterCondition[0]), false,
+                valid.size() == parts.size());
+    }
+
+    /**
+     * Compiles a single condition.
+     *
+     * One pass over the characters finds which operators appear (before spaces are removed,
+     * as spaces can split an operator) and builds the condition without spaces.
+     *
+     * @param text the condition, like {@code minPlayers >= 4}
+     * @return the condition, or null if it is not valid
+     */
+    static FilterCondition compileCondition(String text) {
+        boolean[] found = new boolean[Operations.values().length];
+        StringBuilder compact = new StringBuilder(text.length());
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '>' || c == '<') {
+                found[(c == '>' ? Operations.GREATER_THAN : Operations.LESS_THAN).ordinal()] = true;
+            } else if (c == '=') {
+                Operations pair = operatorEndingWith(previous);
+                if (pair != null) {
+                    found[pair.ordinal()] = true;
+                }
+            }
+            if (c != ' ') {
+                compact.append(c);
+            }
+            previous = c;
+        }
+
+        Operations op = null;
+        for (Operations candidate : OPERATOR_ORDER) {
+            if (found[candidate.ordinal()]) {
+                op = candidate;
+                break;
+            }
+        }
+        if (op == null) {
+            return null;
+        }
+
+        List<String> parts = split(compact.toString(), op.getOperator());
+        if (parts.size() != 2) {
+            return null;
+        }
+        GameData column;
+        try {
+            column = GameData.fromString(parts.get(0));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        String value = parts.get(1);
+        if (column != GameData.NAME) {
+            try {
+                Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return null; // contains non-numeric values
+            }
+        }
+        return new FilterCondition(column, op, value);
+    }
+
+    /**
+     * Gets the two character operator made by a character followed by '='.
+     *
+     * @param first the character before the '='
+     * @return the operator, or null if the pair is not an operator
+     */
+    private static Operations operatorEndingWith(char first) {
+        switch (first) {
+            case '>':
+                return Operations.GREATER_THAN_EQUALS;
+            case '<':
+                return Operations.LESS_THAN_EQUALS;
+            case '=':
+                return Operations.EQUALS;
+            case '!':
+                return Operations.NOT_EQUALS;
+            case '~':
+                return Operations.CONTAINS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Splits text on a literal separator, following the rules of String.split: a separator
+     * at the very start gives an empty first part, and empty parts at the end are dropped.
+     *
+     * @param text      the text to split
+     * @param separator the separator
+     * @return the parts
+     */
+    static List<String> split(String text, String separator) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        int next;
+        while ((next = text.indexOf(separator, start)) >= 0) {
+            parts.add(text.substring(start, next));
+            start = next + separator.length();
+        }
+        parts.add(text.substring(start));
+        int size = parts.size();
+        while (size > 0 && parts.get(size - 1).isEmpty()) {
+            parts.remove(--size);
+        }
+        return parts;
+    }
+
+    /**
+     * Check if the plan should leave the games as they are.
+     *
+     * @return true if the filter was a single invalid condition
+     */
+    boolean isRejected() {
+        return rejected;
+    }
+
+    /**
+     * Check if every condition of the filter made it into the plan.
+     *
+     * The conditions of a complete plan can be given in any order and still mean the same,
+     * which is not true once one is invalid, as it drops the conditions after it.
+     *
+     * @return true if no condition was dropped
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Get the key of the plan, two plans with the same key match the same rows.
+     *
+     * The key is the canonical form of the conditions, sorted, as the order the conditions
+     * are tested in does not change which rows match.
+     *
+     * @return the key of the plan
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the conditions of the plan.
+     *
+     * @return a copy of the conditions, in the order they are applied
+     */
+    FilterCondition[] getConditions() {
+        return conditions.clone();
+    }
+
+    /**
+     * Applies the plan to rows of a table on the calling thread.
+     *
+     * @param table   the table the rows come from
+     * @param rows    the rows to filter, in order
+     * @param allRows true if the rows are every row of the table in row order
+     * @return the rows that match every condition, in the same order
+     * @see #apply(GameTable, int[], boolean, ForkJoinPool)
+     */
+    int[] apply(GameTable table, int[] rows, boolean allRows) {
+        return apply(table, rows, allRows, null);
+    }
+
+    /**
+     * Applies the plan to rows of a table.
+     *
+     * When the rows are the whole table in row order, the indexes give candidate rows for
+     * single conditions: a binary search of a {@link ColumnIndex} or {@link NameIndex} for a
+     * range, or the {@link TrigramIndex} for name ~=. Only the fewest candidates are tested
+     * against the conditions. This is skipped if there are more than a quarter of the rows,
+     * as other ways are then as fast.
+     *
+     * Otherwise, the conditions on columns with a {@link BitmapIndex}, or on any numeric
+     * column of a large table when the Vector API is there, are ANDed together as bitmaps,
+     * and the rows are only tested against the remaining conditions. If there are few rows
+     * left to filter, testing them directly is cheaper than the bitmaps.
+     *
+     * The rows left to test can be split between the threads of a fork/join pool. Each task
+     * tests a range of the rows, and the matches are joined back in order, so the result
+     * is the same as testing them on one thread.
+     *
+     * @param table   the table the rows come from
+     * @param rows    the rows to filter, in order
+     * @param allRows true if the rows are every row of the table in row order
+     * @param pool    the pool to test the rows on, or null to test them on the calling thread
+     * @return the rows that match every condition, in the same order
+     */
+    int[] apply(GameTable table, int[] rows, boolean allRows, ForkJoinPool pool) {
+        if (conditions.length == 0) {
+            return rows;
+        }
+        for (FilterCondition condition : conditions) {
+            if (condition.neverMatches()) {
+                return new int[0];
+            }
+        }
+        boolean[] used = new boolean[conditions.length];
+        if (allRows) {
+            int[] candidates = fromIndexes(table, rows.length, used);
+            if (candidates != null) {
+                return scan(table, candidates, used, null, pool);
+            }
+        }
+        long[] bits = rows.length >= table.size() / BITMAP_SHARE ? fromBitmaps(table, used) : null;
+        if (bits != null && allRows) {
+            return scan(table, rowsOf(bits), used, null, pool);
+        }
+        return scan(table, rows, used, bits, pool);
+    }
+
+    /**
+     * Finds the fewest candidate rows any index gives for a single condition: the range of a
+     * column or name index, or the rows holding every trigram of a name ~= value.
+     *
+     * @param table the table
+     * @param size  number of rows being filtered
+     * @param used  set to true for the condition that was answered exactly
+     * @return the candidate rows in row order, or null if no index is selective enough
+     */
+    private int[] fromIndexes(GameTable table, int size, boolean[] used) {
+        int best = -1;
+        RowRange range = null;
+        for (int i = 0; i < conditions.length; i++) {
+            RowRange candidate = indexRange(table, conditions[i]);
+            if (candidate != null && (range == null || candidate.size() < range.size())) {
+                best = i;
+                range = candidate;
+            }
+        }
+        if (range == null || range.size() > size / INDEX_SHARE) {
+            return null;
+        }
+        // rows that are only likely matches are still checked by the condition
+        used[best] = range.isExact();
+        return range.toRows();
+    }
+
+    /**
+     * Looks up the rows that may match a condition in the indexes of the table.
+     *
+     * @param table     the table
+     * @param condition the condition
+     * @return the rows from the index, or null if no index can answer the condition
+     */
+    private static RowRange indexRange(GameTable table, FilterCondition condition) {
+        if (condition.getColumn() != GameData.NAME) {
+            ColumnIndex index = table.index(condition.getColumn());
+            return index == null ? null : index.range(condition);
+        }
+        if (condition.getOperation() == Operations.CONTAINS) {
+            int[] rows = table.trigrams().candidates(condition.getLowerValue());
+            return rows == null ? null : new RowRange(rows, 0, rows.length, false);
+        }
+        return table.nameIndex().range(condition);
+    }
+
+    /**
+     * ANDs together the bitmaps of every condition a bitmap index can answer. For large
+     * tables, when the Vector API is there, the other conditions on numeric columns are turned
+     * into bitmaps too, by a {@link VectorScan} of the whole column.
+     *
+     * @param table the table
+     * @param used  set to true for the conditions that were answered
+     * @return the rows matching those conditions, or null if there were none
+     */
+    private long[] fromBitmaps(GameTable table, boolean[] used) {
+        long[] bits = null;
+        for (int i = 0; i < conditions.length; i++) {
+            GameData column = conditions[i].getColumn();
+            BitmapIndex bitmap = table.bitmap(column);
+            long[] matching = bitmap != null ? bitmap.matching(conditions[i])
+                    : column != GameData.NAME && VectorScan.isUsedFor(table)
+                            ? VectorScan.matching(table, conditions[i]) : null;
+            if (matching != null) {
+                bits = bits == null ? matching : BitmapIndex.and(bits, matching);
+                used[i] = true;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Lists the rows set in a bitmap.
+     *
+     * @param bits the bitmap
+     * @return the rows, in row order
+     */
+    private static int[] rowsOf(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        int[] rows = new int[count];
+        int next = 0;
+        for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                rows[next++] = w << 6 | Long.numberOfTrailingZeros(word);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Tests rows against the conditions that are not used yet.
+     *
+     * @param table the table
+     * @param rows  the rows to test, in order
+     * @param used  the conditions already answered for these rows
+     * @param bits  rows that match the conditions answered from bitmaps, or null
+     * @param pool  the pool to test the rows on, or null to test them on the calling thread
+     * @return the rows that pass, in the same order
+     */
+    private int[] scan(GameTable table, int[] rows, boolean[] used, long[] bits,
+            ForkJoinPool pool) {
+        IntPredicate[] tests = bindTests(table, used);
+        if (pool == null) {
+            return scan(tests, bits, rows, 0, rows.length);
+        }
+        int split = Math.max(1, rows.length / (pool.getParallelism() * Sorting.TASKS_PER_THREAD));
+        return pool.invoke(new ScanTask(tests, bits, rows, 0, rows.length, split));
+    }
+
+    /**
+     * Binds the conditions that are not used yet, most selective first.
+     *
+     * @param table the table
+     * @param used  the conditions already answered
+     * @return the bound conditions, in the order to test them
+     */
+    private IntPredicate[] bindTests(GameTable table, boolean[] used) {
+        IntPredicate[] tests = new IntPredicate[conditions.length];
+        double[] shares = new double[conditions.length];
+        int bound = 0;
+        for (int i = 0; i < conditions.length; i++) {
+            if (!used[i]) {
+                // insertion sort on the guessed share, ties keep the written order
+                double share = share(table, conditions[i]);
+                int at = bound++;
+                for (; at > 0 && shares[at - 1] > share; at--) {
+                    tests[at] = tests[at - 1];
+                    shares[at] = shares[at - 1];
+                }
+                tests[at] = conditions[i].bind(table);
+                shares[at] = share;
+            }
+        }
+        return Arrays.copyOf(tests, bound);
+    }
+
+    /**
+     * Binds the whole plan to a table, for testing rows one at a time without the indexes.
+     *
+     * @param table the table the rows come from
+     * @return a predicate that is true for the rows matching every condition
+     */
+    IntPredicate bind(GameTable table) {
+        for (FilterCondition condition : conditions) {
+            if (condition.neverMatches()) {
+                return row -> false;
+            }
+        }
+        IntPredicate[] tests = bindTests(table, new boolean[conditions.length]);
+        return row -> matchesAll(tests, row);
+    }
+
+    /**
+     * Guesses the share of the rows of a table that match the whole plan, taking the
+     * conditions to be independent.
+     *
+     * @param table the table
+     * @return the guessed share of rows, between 0 and 1
+     */
+    double share(GameTable table) {
+        double share = 1;
+        for (FilterCondition condition : conditions) {
+            share *= condition.neverMatches() ? 0 : share(table, condition);
+        }
+        return share;
+    }
+
+    /**
+     * Tests a range of rows against bound conditions.
+     *
+     * @param tests the bound conditions
+     * @param bits  rows that match the conditions answered from bitmaps, or null
+     * @param rows  the rows to test, in order
+     * @param from  first index of the rows to test
+     * @param to    index after the last row to test
+     * @return the rows that pass, in the same order
+     */
+    private static int[] scan(IntPredicate[] tests, long[] bits, int[] rows, int from, int to) {
+        int[] matches = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int row = rows[i];
+            if ((bits == null || BitmapIndex.contains(bits, row)) && matchesAll(tests, row)) {
+                matches[count++] = row;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Guesses the share of the rows of the table a condition keeps.
+     *
+     * Numeric columns use their {@link ColumnStats}. There are no stats for names, so name ==
+     * is taken to keep almost nothing, name != almost everything, and the rest half.
+     *
+     * @param table     the table
+     * @param condition the condition
+     * @return the guessed share of rows, between 0 and 1
+     */
+    private static double share(GameTable table, FilterCondition condition) {
+        if (condition.getColumn() != GameData.NAME) {
+            return table.stats(condition.getColumn()).selectivity(condition);
+        }
+        switch (condition.getOperation()) {
+            case EQUALS:
+                return NAME_EQUALS_SHARE;
+            case NOT_EQUALS:
+                return 1;
+            default:
+                return NAME_SHARE;
+        }
+    }
+
+    /**
+     * Tests a row against every condition, stopping at the first that fails.
+     *
+     * @param tests the bound conditions
+     * @param row   the row
+     * @return true if every condition matches
+     */
+    private static boolean matchesAll(IntPredicate[] tests, int row) {
+        for (IntPredicate test : tests) {
+            if (!test.test(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fork/join task that tests a range of rows against bound conditions.
+     *
+     * A range bigger than the split size is cut in half, the left half is forked and the
+     * right half tested by the current thread, and the matches are joined in row order.
+     */
+    private static final class ScanTask extends RecursiveTask<int[]> {
+        /** serial version, tasks are serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** the bound conditions. */
+        private final transient IntPredicate[] tests;
+        /** rows that match the conditions answered from bitmaps, or null. */
+        private final long[] bits;
+        /** the rows to test. */
+        private final int[] rows;
+        /** first index of the rows to test. */
+        private final int from;
+        /** index after the last row to test. */
+        private final int to;
+        /** ranges this small are tested by a single thread. */
+        private final int split;
+
+        /**
+         * Builds a task for a range of the rows.
+         *
+         * @param tests the bound conditions
+         * @param bits  rows that match the conditions answered from bitmaps, or null
+         * @param rows  the rows to test, in order
+         * @param from  first index of the rows to test
+         * @param to    index after the last row to test
+         * @param split ranges this small are tested by a single thread
+         */
+        ScanTask(IntPredicate[] tests, long[] bits, int[] rows, int from, int to, int split) {
+            this.tests = tests;
+            this.bits = bits;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.split = split;
+        }
+
+        /**
+         * Tests the range, splitting it if it is too big.
+         *
+         * @return the rows that pass, in order
+         */
+        @Override
+        protected int[] compute() {
+            if (to - from <= split) {
+                return scan(tests, bits, rows, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(tests, bits, rows, from, mid, split);
+            ScanTask right = new ScanTask(tests, bits, rows, mid, to, split);
+            left.fork();
+            int[] rightRows = right.compute();
+            int[] leftRows = left.join();
+            int[] joined = Arrays.copyOf(leftRows, leftRows.length + rightRows.length);
+            System.arraycopy(rightRows, 0, joined, leftRows.length, rightRows.length);
+            return joined;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package student;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the compiled plans of recent filters, so a filter that is used again is not
+ * tokenized, looked up or parsed again.
+ *
+ * Filters are cached under a normalized form of their text, so ways of writing the same
+ * filter share one plan:
+ * <ul>
+ * <li>spaces are dropped, except a single space between two operator characters, as
+ * {@code > =} is not the same as {@code >=}</li>
+ * <li>column names and their aliases, in any case, become the GameData name, so
+ * {@code MinPlayers>=2} and {@code min_players >= 2} are the same filter</li>
+ * <li>a filter where every condition is valid is also cached under its conditions in sorted
+ * order, so {@code a,b} finds the plan of {@code b,a}. Once a condition is invalid the order
+ * decides which conditions are used, so those filters are only found as written.</li>
+ * </ul>
+ *
+ * The cache can be shared between threads. Plans never change once compiled, so if two
+ * threads miss on the same filter at once, both compile it and either plan can be kept.
+ */
+final class FilterPlanCache {
+    /** the plans, by normalized filter. */
+    private final LruCache<String, FilterPlan> plans;
+
+    /**
+     * Constructor for the cache.
+     *
+     * @param capacity most plans kept
+     */
+    FilterPlanCache(int capacity) {
+        this.plans = new LruCache<>(capacity);
+    }
+
+    /**
+     * Gets the plan of a filter, compiling and caching it if it is not cached.
+     *
+     * @param filter the filter
+     * @return the compiled plan
+     */
+    FilterPlan get(String filter) {
+        String key = normalize(filter);
+        String asWritten = "t" + key;
+        String anyOrder = anyOrderKey(key);
+        FilterPlan plan = plans.get(asWritten, anyOrder);
+        if (plan == null) {
+            plan = FilterPlan.compile(filter);
+            if (anyOrder != null && plan.isComplete()) {
+                plans.put(anyOrder, plan);
+            }
+        }
+        plans.put(asWritten, plan);
+        return plan;
+    }
+
+    /**
+     * Get the hit and miss counters of the cache.
+     *
+     * @return a snapshot of the counters
+     */
+    CacheStats stats() {
+        return plans.stats();
+    }
+
+    /**
+     * Normalizes the text of a filter, two filters with the same normal form always
+     * compile to the same plan.
+     *
+     * @param filter the filter
+     * @return the normalized filter
+     */
+    static String normalize(String filter) {
+        StringBuilder key = new StringBuilder(filter.length());
+        int conditionStart = 0;
+        boolean inColumn = true;
+        boolean space = false;
+        char previous = 0;
+        for (int i = 0; i < filter.length(); i++) {
+            char c = filter.charAt(i);
+            if (c == ' ') {
+                space = true;
+                continue;
+            }
+            if (space && isOperatorChar(previous) && isOperatorChar(c)) {
+                key.append(' '); // keeps "> =" apart from ">="
+            }
+            space = false;
+            if (inColumn && (isOperatorChar(c) || c == ',')) {
+                canonicalColumn(key, conditionStart);
+                inColumn = false;
+            }
+            key.append(c);
+            previous = c;
+            if (c == ',') {
+                conditionStart = key.length();
+                inColumn = true;
+            }
+        }
+        if (inColumn) {
+            canonicalColumn(key, conditionStart);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets the key a normalized filter has if the order of its conditions is ignored.
+     *
+     * @param key the normalized filter
+     * @return the conditions sorted, or null if a condition is empty
+     */
+    private static String anyOrderKey(String key) {
+        List<String> conditions = FilterPlan.split(key, ",");
+        if (conditions.contains("")) {
+            return null;
+        }
+        Collections.sort(conditions);
+        return "s" + String.join(",", conditions);
+    }
+
+    /**
+     * Replaces the column at the end of the key with its GameData name, if it is a column.
+     *
+     * @param key   the key being built
+     * @param start where the column starts in the key
+     */
+    private static void canonicalColumn(StringBuilder key, int start) {
+        try {
+            GameData column = GameData.fromString(key.substring(start));
+            key.replace(start, key.length(), column.name());
+        } catch (IllegalArgumentException e) {
+            // not a column, the condition is invalid and kept as written
+        }
+    }
+
+    /**
+     * Check if a character is part of an operator.
+     *
+     * @param c the character
+     * @return true for the characters operators are made of
+     */
+    private static boolean isOperatorChar(char c) {
+        return c == '>' || c == '<' || c == '=' || c == '!' || c == '~';
+    }
+}
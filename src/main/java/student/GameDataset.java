@@ -0,0 +1,111 @@
+package student;
+
+import java.util.Collection;
+
+/**
+ * A collection of board games loaded once, to be shared by any number of planning sessions.
+ *
+ * The dataset holds the games as a {@link GameTable} with all of its indexes, the compiled
+ * plans of recent filters and the rows of recent queries. The table never changes and the
+ * caches can be used from many threads, so one dataset can back many {@link Planner}s, one
+ * per session, on as many threads, with a single copy of the games. A session only adds the
+ * rows of its own current filter, and queries one session ran are cache hits for the rest.
+ *
+ * <pre>{@code
+ * GameDataset dataset = GamesLoader.loadDatasetCached(collection);
+ * Planner session = new Planner(dataset); // one for each user
+ * }</pre>
+ */
+public final class GameDataset {
+    /** number of compiled filters kept. */
+    private static final int PLAN_CACHE_SIZE = 256;
+    /** total number of rows kept in cached query results, 16 MiB of row ids. */
+    private static final long RESULT_CACHE_ROWS = 1L << 22;
+
+    /** hold the board games, one row per game. */
+    private final GameTable table;
+
+    /** compiled plans of recent filters. */
+    private final FilterPlanCache plans;
+
+    /** rows of recent queries, weighed by their number of rows. The arrays are shared. */
+    private final LruCache<QueryKey, int[]> results =
+            new LruCache<>(RESULT_CACHE_ROWS, rows -> rows.length);
+
+    /**
+     * Constructor for a dataset over a table, with empty caches.
+     *
+     * @param table the board games, one row per game
+     */
+    GameDataset(GameTable table) {
+        this(table, new FilterPlanCache(PLAN_CACHE_SIZE));
+    }
+
+    /**
+     * Constructor for a dataset over a table, with an empty result cache.
+     *
+     * @param table the board games, one row per game
+     * @param plans the compiled filter cache to use, plans do not depend on the games
+     */
+    private GameDataset(GameTable table, FilterPlanCache plans) {
+        this.table = table;
+        this.plans = plans;
+    }
+
+    /**
+     * Builds a dataset holding the games, building every index up front.
+     *
+     * @param games the board games
+     * @return the dataset
+     */
+    public static GameDataset of(Collection<BoardGame> games) {
+        return new GameDataset(GameTable.of(games));
+    }
+
+    /**
+     * Makes a dataset over new games that keeps the compiled filters of this one. Its result
+     * cache starts empty, as rows of these games mean nothing in the new table.
+     *
+     * @param newTable the new games
+     * @return the new dataset
+     */
+    GameDataset withTable(GameTable newTable) {
+        return new GameDataset(newTable, plans);
+    }
+
+    /**
+     * Get the number of games.
+     *
+     * @return the number of games in the dataset
+     */
+    public int size() {
+        return table.count();
+    }
+
+    /**
+     * Get the table of the games.
+     *
+     * @return the table, not to be changed
+     */
+    GameTable table() {
+        return table;
+    }
+
+    /**
+     * Get the cache of compiled filters.
+     *
+     * @return the plan cache
+     */
+    FilterPlanCache plans() {
+        return plans;
+    }
+
+    /**
+     * Get the cache of query results.
+     *
+     * @return the result cache
+     */
+    LruCache<QueryKey, int[]> results() {
+        return results;
+    }
+}
@@ -77,8 +77,19 @@ public class GameList implements IGameList {
      */
     @Override
     public void addToList(String str, Stream<BoardGame> filtered) throws IllegalArgumentException {
+        addToList(str, filtered.toList());
+    }
 
-        List<BoardGame> gameList = filtered.toList();
+    /**
+     * Adds a game or games to the list, reading them from a list of the filtered games.
+     * Games are read only as they are needed, a number reads one game and a range the games
+     * in it, so a list that builds its games as they are read, like the ones the Planner
+     * returns, does not build the rest.
+     * @param str the string to parse and add games to the list.
+     * @param gameList the filtered games to use as a basis for adding.
+     * @throws IllegalArgumentException if the string is not valid.
+     */
+    public void addToList(String str, List<BoardGame> gameList) throws IllegalArgumentException {
         int size = gameList.size();
 
         if (ADD_ALL.equals(str)) {
@@ -114,9 +125,10 @@ public class GameList implements IGameList {
             addSingleGameToList(gameList, number - 1);
             return;
         } catch (NumberFormatException e) {
+            String name = str.trim();
             // Optional<T> is a wrapper class that helps to handle the case where a value may or may not be present.
             Optional<BoardGame> game = gameList.stream()
-                    .filter(boardGame -> boardGame.getName().equalsIgnoreCase(str.trim()))
+                    .filter(boardGame -> boardGame.getName().equalsIgnoreCase(name))
                     .findFirst();
             // isPresent() checks whether a value exists inside the Optional.
             if (game.isPresent()) {
@@ -0,0 +1,256 @@
+package student;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Turns raw csv bytes into BoardGame objects without splitting lines into strings.
+ *
+ * The collection file has far more columns than GameData uses, so the parser walks
+ * the bytes of a line once, only remembers where the columns it needs start and end,
+ * and parses the numbers straight out of those byte ranges. The only string built per
+ * row is the name of the game.
+ *
+ * Anything the fast paths do not understand is handed to Integer.parseInt or
+ * Double.parseDouble, so the results (and which rows get skipped) are exactly the same
+ * as parsing the split strings.
+ */
+final class GameRowParser {
+    /** csv column delimiter. */
+    private static final byte DELIMITER = ',';
+    /** line end. */
+    private static final byte NEW_LINE = '\n';
+    /** optional carriage return before a line end. */
+    private static final byte RETURN = '\r';
+    /** the most digits a long can hold without overflowing. */
+    private static final int MAX_LONG_DIGITS = 18;
+    /** doubles hold every integer below this exactly. */
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+    /** powers of ten that a double can hold exactly. */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+        1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    /** number of GameData columns. */
+    private static final int COLUMNS = GameData.values().length;
+
+    /** for each csv column index, the GameData ordinal it holds or -1 if not used. */
+    private final int[] projection;
+    /** start of each GameData column in the current line. */
+    private final int[] starts = new int[COLUMNS];
+    /** end (exclusive) of each GameData column in the current line. */
+    private final int[] ends = new int[COLUMNS];
+    /** scratch space used when the buffer is not backed by an array. */
+    private byte[] scratch = new byte[64];
+
+    /**
+     * Builds a parser for a file with the given header mapping.
+     *
+     * @param columnMap the map of columns to index, must contain every GameData column
+     */
+    GameRowParser(Map<GameData, Integer> columnMap) {
+        int lastColumn = columnMap.values().stream().max(Integer::compareTo).get();
+        projection = new int[lastColumn + 1];
+        Arrays.fill(projection, -1);
+        for (Map.Entry<GameData, Integer> entry : columnMap.entrySet()) {
+            projection[entry.getValue()] = entry.getKey().ordinal();
+        }
+    }
+
+    /**
+     * Parses every complete line in part of a buffer.
+     *
+     * @param buf   the bytes to read from, using absolute positions
+     * @param from  the first byte to read
+     * @param to    the byte after the last byte to read
+     * @param last  true if no more bytes follow, so a line without a line end is complete
+     * @param games where the parsed games are added
+     * @param stats counts the loaded and skipped rows
+     * @return the position of the first byte that was not consumed
+     */
+    int parseLines(ByteBuffer buf, int from, int to, boolean last, Collection<BoardGame> games,
+            LoadStats stats) {
+        int pos = from;
+        while (pos < to) {
+            int lineEnd = indexOf(buf, NEW_LINE, pos, to);
+            if (lineEnd < 0) {
+                if (!last) {
+                    break;
+                }
+                lineEnd = to;
+            }
+            BoardGame game = parseLine(buf, pos, lineEnd);
+            if (game == null) {
+                stats.rowSkipped();
+            } else {
+                stats.rowLoaded();
+                games.add(game);
+            }
+            pos = lineEnd + 1;
+        }
+        return Math.min(pos, to);
+    }
+
+    /**
+     * Converts one line of the csv file into a BoardGame object.
+     *
+     * @param buf   the bytes to read from
+     * @param start the first byte of the line
+     * @param end   the byte after the line, not including the line end
+     * @return a BoardGame object, or null if the line could not be converted
+     */
+    BoardGame parseLine(ByteBuffer buf, int start, int end) {
+        if (end > start && buf.get(end - 1) == RETURN) {
+            end--;
+        }
+        int column = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end && column < projection.length; i++) {
+            if (i == end || buf.get(i) == DELIMITER) {
+                int col = projection[column];
+                if (col >= 0) {
+                    starts[col] = fieldStart;
+                    ends[col] = i;
+                }
+                column++;
+                fieldStart = i + 1;
+            }
+        }
+        if (column < projection.length) {
+            return null; // not enough columns
+        }
+
+        try {
+            return new BoardGame(text(buf, GameData.NAME),
+                    parseInt(buf, GameData.ID),
+                    parseInt(buf, GameData.MIN_PLAYERS),
+                    parseInt(buf, GameData.MAX_PLAYERS),
+                    parseInt(buf, GameData.MIN_TIME),
+                    parseInt(buf, GameData.MAX_TIME),
+                    parseDouble(buf, GameData.DIFFICULTY),
+                    parseInt(buf, GameData.RANK),
+                    parseDouble(buf, GameData.RATING),
+                    parseInt(buf, GameData.YEAR));
+        } catch (NumberFormatException e) {
+            // skip if there is an issue
+            return null;
+        }
+    }
+
+    /**
+     * Finds the next position of a byte.
+     *
+     * @param buf  the bytes to search
+     * @param b    the byte to find
+     * @param from first position to check
+     * @param to   position after the last one to check
+     * @return the position of the byte, or -1 if it is not there
+     */
+    static int indexOf(ByteBuffer buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a column of the current line as UTF-8 text.
+     *
+     * @param buf the bytes to read from
+     * @param col the column to decode
+     * @return the text of the column
+     */
+    private String text(ByteBuffer buf, GameData col) {
+        int start = starts[col.ordinal()];
+        int length = ends[col.ordinal()] - start;
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + start, length,
+                    StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buf.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a column of the current line as an int.
+     *
+     * Plain ascii digits are parsed in place, anything else goes through
+     * Integer.parseInt so the same values are accepted and rejected.
+     *
+     * @param buf the bytes to read from
+     * @param col the column to parse
+     * @return the parsed value
+     * @throws NumberFormatException if the column is not an int
+     */
+    private int parseInt(ByteBuffer buf, GameData col) {
+        int start = starts[col.ordinal()];
+        int end = ends[col.ordinal()];
+        boolean negative = start < end && buf.get(start) == '-';
+        int i = negative || (start < end && buf.get(start) == '+') ? start + 1 : start;
+        if (i == end || end - i > MAX_LONG_DIGITS) {
+            return Integer.parseInt(text(buf, col));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buf.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(text(buf, col));
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range: " + text(buf, col));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a column of the current line as a double.
+     *
+     * Plain decimals (like 6.60806) whose digits fit exactly in a double are worked out
+     * with a single division, which rounds the same way Double.parseDouble does.
+     * Everything else goes through Double.parseDouble.
+     *
+     * @param buf the bytes to read from
+     * @param col the column to parse
+     * @return the parsed value
+     * @throws NumberFormatException if the column is not a number
+     */
+    private double parseDouble(ByteBuffer buf, GameData col) {
+        int start = starts[col.ordinal()];
+        int end = ends[col.ordinal()];
+        boolean negative = start < end && buf.get(start) == '-';
+        int i = negative || (start < end && buf.get(start) == '+') ? start + 1 : start;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = buf.get(i);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || digits == MAX_LONG_DIGITS) {
+                return Double.parseDouble(text(buf, col));
+            }
+            mantissa = mantissa * 10 + digit;
+            digits++;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0 || mantissa >= MAX_EXACT_DOUBLE) {
+            return Double.parseDouble(text(buf, col));
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,215 @@
+package student;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary copy of a loaded game collection, so later starts can skip parsing the csv.
+ *
+ * The snapshot is columnar: every int column is stored as one block, then the two double
+ * columns, then the names as one block of UTF-8 bytes with an offset table. The columns are
+ * read straight back into a {@link GameTable}, without building a BoardGame for each row.
+ *
+ * The header records the length, last modified time and CRC32C checksum of the csv it was
+ * built from, and the whole file ends with a checksum of its own contents. A csv with the
+ * same length and modified time is taken to be the same csv, without reading it. Only when
+ * the time differs, or is not known, is the csv checksummed and compared. A snapshot whose
+ * version, source or contents do not match is treated as stale and ignored.
+ *
+ * <pre>
+ * int    magic, int version
+ * long   source length, long source modified time, long source checksum
+ * int    row count (n)
+ * int[n] id, minPlayers, maxPlayers, minPlayTime, maxPlayTime, rank, yearPublished
+ * double[n] difficulty, averageRating
+ * int[n + 1] name offsets, byte[] names
+ * int    checksum of everything above
+ * </pre>
+ */
+final class GameSnapshot {
+    /** marks the file as a snapshot, "BGAS". */
+    private static final int MAGIC = 0x42474153;
+    /** bumped whenever the layout changes, old snapshots are then rebuilt. */
+    static final int VERSION = 2;
+    /** modified time of a csv whose time is not known. */
+    static final long UNKNOWN_TIME = 0;
+    /** bytes before the columns start. */
+    private static final int HEADER_BYTES = Integer.BYTES * 3 + Long.BYTES * 3;
+    /** the int columns, in the order they are stored. */
+    private static final GameData[] INT_COLUMNS = {GameData.ID, GameData.MIN_PLAYERS,
+        GameData.MAX_PLAYERS, GameData.MIN_TIME, GameData.MAX_TIME, GameData.RANK,
+        GameData.YEAR};
+    /** the double columns, in the order they are stored. */
+    private static final GameData[] DOUBLE_COLUMNS = {GameData.DIFFICULTY, GameData.RATING};
+
+    /** private constructor to prevent instantiation. */
+    private GameSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the games.
+     *
+     * The snapshot is written to a temporary file and moved into place, so a reader never
+     * sees half a file.
+     *
+     * @param file           where to write the snapshot
+     * @param table          the games to store, in the order they should be loaded
+     * @param sourceLength   the length of the csv the games came from
+     * @param sourceModified the last modified time of the csv, or UNKNOWN_TIME
+     * @param sourceChecksum the CRC32C checksum of the csv the games came from
+     * @throws IOException if the snapshot can not be written
+     */
+    static void write(Path file, GameTable table, long sourceLength, long sourceModified,
+            long sourceChecksum) throws IOException {
+        int rows = table.size();
+        byte[][] names = new byte[rows][];
+        long nameBytes = 0;
+        for (int row = 0; row < rows; row++) {
+            names[row] = table.name(row).getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[row].length;
+        }
+        long size = HEADER_BYTES + (long) rows * (INT_COLUMNS.length * Integer.BYTES
+                + DOUBLE_COLUMNS.length * Double.BYTES) + (rows + 1L) * Integer.BYTES + nameBytes
+                + Integer.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("collection too large for a snapshot");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).putLong(sourceModified)
+                .putLong(sourceChecksum).putInt(rows);
+        for (GameData column : INT_COLUMNS) {
+            for (int value : table.intColumn(column)) {
+                buf.putInt(value);
+            }
+        }
+        for (GameData column : DOUBLE_COLUMNS) {
+            for (double value : table.doubleColumn(column)) {
+                buf.putDouble(value);
+            }
+        }
+        int offset = 0;
+        buf.putInt(offset);
+        for (byte[] name : names) {
+            offset += name.length;
+            buf.putInt(offset);
+        }
+        for (byte[] name : names) {
+            buf.put(name);
+        }
+        buf.putInt(checksum(buf, 0, buf.position()));
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), "snapshot", ".tmp");
+        try {
+            Files.write(tmp, buf.array());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads the games back from a snapshot.
+     *
+     * The file is memory mapped, and the columns are read straight from the mapping. The
+     * csv checksum is only asked for if the modified times do not match.
+     *
+     * @param file           the snapshot to read
+     * @param sourceLength   the length of the current csv
+     * @param sourceModified the last modified time of the current csv, or UNKNOWN_TIME
+     * @param sourceChecksum gets the CRC32C checksum of the current csv, -1 if it can not
+     * @return the games in the order they were written, or null if the snapshot is missing,
+     *         from another version, built from a different csv, or corrupt
+     */
+    static GameTable read(Path file, long sourceLength, long sourceModified,
+            LongSupplier sourceChecksum) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Integer.BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt(0) != MAGIC || buf.getInt(Integer.BYTES) != VERSION
+                    || buf.getLong(Integer.BYTES * 2) != sourceLength) {
+                return null;
+            }
+            boolean sameTime = sourceModified != UNKNOWN_TIME
+                    && buf.getLong(Integer.BYTES * 2 + Long.BYTES) == sourceModified;
+            long checksum = buf.getLong(Integer.BYTES * 2 + Long.BYTES * 2);
+            if (!sameTime && checksum != sourceChecksum.getAsLong()) {
+                return null;
+            }
+            int end = (int) size - Integer.BYTES;
+            if (checksum(buf, 0, end) != buf.getInt(end)) {
+                return null;
+            }
+            return readColumns(buf);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the table from the columns of a checked snapshot.
+     *
+     * @param buf the snapshot contents
+     * @return the games in the order they were written
+     */
+    private static GameTable readColumns(ByteBuffer buf) {
+        int rows = buf.getInt(HEADER_BYTES - Integer.BYTES);
+        int ints = HEADER_BYTES;
+        int doubles = ints + rows * INT_COLUMNS.length * Integer.BYTES;
+        int offsets = doubles + rows * DOUBLE_COLUMNS.length * Double.BYTES;
+        int names = offsets + (rows + 1) * Integer.BYTES;
+
+        GameTable.Builder builder = new GameTable.Builder(rows);
+        byte[] name = new byte[64];
+        for (int row = 0; row < rows; row++) {
+            int start = buf.getInt(offsets + row * Integer.BYTES);
+            int length = buf.getInt(offsets + (row + 1) * Integer.BYTES) - start;
+            if (name.length < length) {
+                name = new byte[Math.max(length, name.length * 2)];
+            }
+            buf.get(names + start, name, 0, length);
+            builder.add(new String(name, 0, length, StandardCharsets.UTF_8),
+                    buf.getInt(ints + row * Integer.BYTES),
+                    buf.getInt(ints + (rows + row) * Integer.BYTES),
+                    buf.getInt(ints + (2 * rows + row) * Integer.BYTES),
+                    buf.getInt(ints + (3 * rows + row) * Integer.BYTES),
+                    buf.getInt(ints + (4 * rows + row) * Integer.BYTES),
+                    buf.getDouble(doubles + row * Double.BYTES),
+                    buf.getInt(ints + (5 * rows + row) * Integer.BYTES),
+                    buf.getDouble(doubles + (rows + row) * Double.BYTES),
+                    buf.getInt(ints + (6 * rows + row) * Integer.BYTES));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the CRC32C checksum of part of a buffer.
+     *
+     * @param buf  the buffer
+     * @param from first byte to include
+     * @param to   byte after the last one to include
+     * @return the checksum
+     */
+    private static int checksum(ByteBuffer buf, int from, int to) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf.duplicate().position(from).limit(to));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,686 @@
+package student;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Column storage for a collection of board games.
+ *
+ * Instead of one object per game, every attribute is kept in its own primitive array,
+ * and a game is just a row index into those arrays. Filters and sorts scan the one
+ * column they need, and a game costs a few array slots instead of an object, a boxed
+ * set entry and the pointers between them.
+ *
+ * BoardGame objects are only built when a row is handed back to a caller. Once built, a
+ * table never changes, and it keeps a {@link ColumnIndex} and {@link ColumnStats} for each
+ * numeric column, and a {@link TrigramIndex} and a {@link NameIndex} of the names. The
+ * players, year, difficulty and rating columns also get a {@link BitmapIndex}, built the
+ * first time a filter asks for it, as only filters of a large share of the rows use them.
+ *
+ * A refresh does not build a table from scratch: a {@link Patch} of a table keeps its rows
+ * where they are, marks the deleted ones in a bitmap, replaces the changed ones in place and
+ * adds the new ones at the end, and patches each index of the table with just those rows.
+ * Deleted rows stay as gaps until the table is compacted, they are in no index and
+ * {@link #allRows()} leaves them out.
+ */
+final class GameTable {
+    /** columns that get a bitmap index, if they have few enough distinct values. */
+    private static final GameData[] BITMAP_COLUMNS = {GameData.MIN_PLAYERS,
+        GameData.MAX_PLAYERS, GameData.YEAR, GameData.DIFFICULTY, GameData.RATING};
+
+    /** number of rows, deleted rows included. */
+    private final int size;
+    /** number of rows that are not deleted. */
+    private final int count;
+    /** the deleted rows. */
+    private final long[] deleted;
+    /** game names. */
+    private final String[] names;
+    /** game names with spaces removed, as name filters compare them. */
+    private final String[] filterNames;
+    /** game names with spaces removed, in lower case. */
+    private final String[] lowerFilterNames;
+    /** objectids. */
+    private final int[] ids;
+    /** minimum number of players. */
+    private final int[] minPlayers;
+    /** maximum number of players. */
+    private final int[] maxPlayers;
+    /** minimum play time in minutes. */
+    private final int[] minPlayTimes;
+    /** maximum play time in minutes. */
+    private final int[] maxPlayTimes;
+    /** rank of the game. */
+    private final int[] ranks;
+    /** year the game was published. */
+    private final int[] years;
+    /** average difficulty of the game. */
+    private final double[] difficulties;
+    /** average rating of the game. */
+    private final double[] ratings;
+    /** sorted index of each numeric column, by GameData ordinal, null for NAME and ID. */
+    private final ColumnIndex[] indexes = new ColumnIndex[GameData.values().length];
+    /** stats of each numeric column, by GameData ordinal, null for NAME and ID. */
+    private final ColumnStats[] stats = new ColumnStats[GameData.values().length];
+    /** bitmap index of each low cardinality column, by GameData ordinal, else null. */
+    private final BitmapIndex[] bitmaps = new BitmapIndex[GameData.values().length];
+    /** true for the columns whose bitmap index has been built, or found not to be worth it. */
+    private final boolean[] bitmapBuilt = new boolean[GameData.values().length];
+    /** trigram index of the lower case names without spaces. */
+    private final TrigramIndex trigrams;
+    /** sorted names. */
+    private final NameIndex nameIndex;
+
+    /**
+     * Constructor for the table, takes ownership of the arrays.
+     *
+     * @param builder the builder holding the columns
+     */
+    private GameTable(Builder builder) {
+        this.size = builder.size;
+        this.count = size;
+        this.deleted = new long[BitmapIndex.words(size)];
+        this.names = Arrays.copyOf(builder.names, size);
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.minPlayers = Arrays.copyOf(builder.minPlayers, size);
+        this.maxPlayers = Arrays.copyOf(builder.maxPlayers, size);
+        this.minPlayTimes = Arrays.copyOf(builder.minPlayTimes, size);
+        this.maxPlayTimes = Arrays.copyOf(builder.maxPlayTimes, size);
+        this.ranks = Arrays.copyOf(builder.ranks, size);
+        this.years = Arrays.copyOf(builder.years, size);
+        this.difficulties = Arrays.copyOf(builder.difficulties, size);
+        this.ratings = Arrays.copyOf(builder.ratings, size);
+        this.filterNames = new String[size];
+        this.lowerFilterNames = new String[size];
+        for (int row = 0; row < size; row++) {
+            filterNames[row] = names[row].replace(" ", "");
+            lowerFilterNames[row] = filterNames[row].toLowerCase();
+        }
+        // the columns are all set, so the indexes can read them
+        for (GameData column : GameData.values()) {
+            if (column != GameData.NAME && column != GameData.ID) {
+                indexes[column.ordinal()] = ColumnIndex.of(this, column);
+                stats[column.ordinal()] = ColumnStats.of(this, column);
+            }
+        }
+        this.trigrams = TrigramIndex.of(lowerFilterNames);
+        this.nameIndex = NameIndex.of(this);
+    }
+
+    /**
+     * Constructor for a patched table, copies the columns of the table it patches.
+     *
+     * @param patch the changes to the table
+     */
+    private GameTable(Patch patch) {
+        GameTable base = patch.base;
+        this.size = base.size + patch.added.size();
+        this.count = base.count - patch.deletes + patch.added.size();
+        this.deleted = Arrays.copyOf(patch.deleted, BitmapIndex.words(size));
+        this.names = Arrays.copyOf(base.names, size);
+        this.filterNames = Arrays.copyOf(base.filterNames, size);
+        this.lowerFilterNames = Arrays.copyOf(base.lowerFilterNames, size);
+        this.ids = Arrays.copyOf(base.ids, size);
+        this.minPlayers = Arrays.copyOf(base.minPlayers, size);
+        this.maxPlayers = Arrays.copyOf(base.maxPlayers, size);
+        this.minPlayTimes = Arrays.copyOf(base.minPlayTimes, size);
+        this.maxPlayTimes = Arrays.copyOf(base.maxPlayTimes, size);
+        this.ranks = Arrays.copyOf(base.ranks, size);
+        this.years = Arrays.copyOf(base.years, size);
+        this.difficulties = Arrays.copyOf(base.difficulties, size);
+        this.ratings = Arrays.copyOf(base.ratings, size);
+        int[] fresh = new int[patch.replaced.size() + patch.added.size()];
+        int next = 0;
+        for (Map.Entry<Integer, BoardGame> replace : patch.replaced.entrySet()) {
+            fresh[next++] = replace.getKey();
+            set(replace.getKey(), replace.getValue());
+        }
+        for (BoardGame game : patch.added) {
+            fresh[next] = base.size + next - patch.replaced.size();
+            set(fresh[next++], game);
+        }
+
+        for (GameData column : GameData.values()) {
+            int at = column.ordinal();
+            if (column != GameData.NAME && column != GameData.ID) {
+                indexes[at] = base.indexes[at].patch(this, column, patch.removed, fresh);
+                stats[at] = base.stats[at].patch(base, this, column, patch.removed, fresh);
+            }
+            // a bitmap the base table never built is left to be built when it is asked for
+            BitmapIndex bitmap = base.builtBitmap(column);
+            if (bitmap != null) {
+                bitmaps[at] = bitmap.patch(this, column, patch.removed, fresh);
+                bitmapBuilt[at] = true;
+            }
+        }
+        this.trigrams = base.trigrams.patch(lowerFilterNames, patch.removed, fresh);
+        this.nameIndex = base.nameIndex.patch(this, patch.removed, fresh);
+    }
+
+    /**
+     * Sets the values of a row to those of a game, while a patched table is being built.
+     *
+     * @param row  the row
+     * @param game the game
+     */
+    private void set(int row, BoardGame game) {
+        names[row] = game.getName();
+        filterNames[row] = names[row].replace(" ", "");
+        lowerFilterNames[row] = filterNames[row].toLowerCase();
+        ids[row] = game.getId();
+        minPlayers[row] = game.getMinPlayers();
+        maxPlayers[row] = game.getMaxPlayers();
+        minPlayTimes[row] = game.getMinPlayTime();
+        maxPlayTimes[row] = game.getMaxPlayTime();
+        difficulties[row] = game.getDifficulty();
+        ranks[row] = game.getRank();
+        ratings[row] = game.getRating();
+        years[row] = game.getYearPublished();
+    }
+
+    /**
+     * Builds a table holding the games, one row per game in iteration order.
+     *
+     * @param games the games
+     * @return the table
+     */
+    static GameTable of(Collection<BoardGame> games) {
+        Builder builder = new Builder(games.size());
+        for (BoardGame game : games) {
+            builder.add(game);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the number of rows, which is one more than the last row.
+     *
+     * @return number of rows in the table, deleted rows included
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of games.
+     *
+     * @return number of rows that are not deleted
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Get every row of the table in order.
+     *
+     * @return the rows 0 to size - 1 that are not deleted
+     */
+    int[] allRows() {
+        int[] rows = new int[count];
+        int next = 0;
+        for (int row = 0; row < size; row++) {
+            if (!isDeleted(row)) {
+                rows[next++] = row;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Check if a row was deleted by a patch.
+     *
+     * @param row the row
+     * @return true if the row is deleted
+     */
+    boolean isDeleted(int row) {
+        return BitmapIndex.contains(deleted, row);
+    }
+
+    /**
+     * Get the deleted rows.
+     *
+     * @return a bitmap of the deleted rows, not to be changed
+     */
+    long[] deleted() {
+        return deleted;
+    }
+
+    /**
+     * Builds a table of the rows that are not deleted, with every index built again.
+     *
+     * @return the compacted table, its rows in the same order
+     * @see #compactedRows()
+     */
+    GameTable compact() {
+        Builder builder = new Builder(count);
+        for (int row = 0; row < size; row++) {
+            if (!isDeleted(row)) {
+                builder.add(this, row);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the row each row becomes in the {@link #compact()}ed table.
+     *
+     * @return the new row of each row, -1 for the deleted rows
+     */
+    int[] compactedRows() {
+        int[] rows = new int[size];
+        int next = 0;
+        for (int row = 0; row < size; row++) {
+            rows[row] = isDeleted(row) ? -1 : next++;
+        }
+        return rows;
+    }
+
+    /**
+     * Builds the BoardGame for a row.
+     *
+     * @param row the row
+     * @return a new BoardGame with the values of the row
+     */
+    BoardGame game(int row) {
+        return new BoardGame(names[row], ids[row], minPlayers[row], maxPlayers[row],
+                minPlayTimes[row], maxPlayTimes[row], difficulties[row], ranks[row], ratings[row],
+                years[row]);
+    }
+
+    /**
+     * Get the name of the game in a row.
+     *
+     * @param row the row
+     * @return the name of the game
+     */
+    String name(int row) {
+        return names[row];
+    }
+
+    /**
+     * Get the objectid of the game in a row.
+     *
+     * @param row the row
+     * @return the objectid
+     */
+    int id(int row) {
+        return ids[row];
+    }
+
+    /**
+     * Get the names column.
+     *
+     * @return the names, indexed by row. Do not modify.
+     */
+    String[] names() {
+        return names;
+    }
+
+    /**
+     * Get the names column with spaces removed, as name filters compare names.
+     *
+     * @return the names without spaces, indexed by row. Do not modify.
+     */
+    String[] filterNames() {
+        return filterNames;
+    }
+
+    /**
+     * Get the names column with spaces removed and in lower case.
+     *
+     * @return the lower case names without spaces, indexed by row. Do not modify.
+     */
+    String[] lowerFilterNames() {
+        return lowerFilterNames;
+    }
+
+    /**
+     * Get one of the int columns.
+     *
+     * @param column the column, one of the whole number GameData columns
+     * @return the values indexed by row, or null if the column is not an int column.
+     *         Do not modify.
+     */
+    int[] intColumn(GameData column) {
+        switch (column) {
+            case ID:
+                return ids;
+            case MIN_PLAYERS:
+                return minPlayers;
+            case MAX_PLAYERS:
+                return maxPlayers;
+            case MIN_TIME:
+                return minPlayTimes;
+            case MAX_TIME:
+                return maxPlayTimes;
+            case RANK:
+                return ranks;
+            case YEAR:
+                return years;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get one of the double columns.
+     *
+     * @param column the column, RATING or DIFFICULTY
+     * @return the values indexed by row, or null if the column is not a double column.
+     *         Do not modify.
+     */
+    double[] doubleColumn(GameData column) {
+        switch (column) {
+            case RATING:
+                return ratings;
+            case DIFFICULTY:
+                return difficulties;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the sorted index of a numeric column.
+     *
+     * @param column the column
+     * @return the index, or null for NAME and ID, which are not indexed
+     */
+    ColumnIndex index(GameData column) {
+        return indexes[column.ordinal()];
+    }
+
+    /**
+     * Get the stats of a numeric column.
+     *
+     * @param column the column
+     * @return the stats, or null for NAME and ID
+     */
+    ColumnStats stats(GameData column) {
+        return stats[column.ordinal()];
+    }
+
+    /**
+     * Get the bitmap index of a column, building it the first time it is asked for.
+     *
+     * @param column the column
+     * @return the index, or null if the column has none
+     */
+    BitmapIndex bitmap(GameData column) {
+        synchronized (bitmaps) {
+            int at = column.ordinal();
+            if (!bitmapBuilt[at]) {
+                bitmapBuilt[at] = true;
+                bitmaps[at] = Arrays.asList(BITMAP_COLUMNS).contains(column)
+                        ? BitmapIndex.of(this, column) : null;
+            }
+            return bitmaps[at];
+        }
+    }
+
+    /**
+     * Get the bitmap index of a column if it has been built.
+     *
+     * @param column the column
+     * @return the index, or null if it has not been built or the column has none
+     */
+    private BitmapIndex builtBitmap(GameData column) {
+        synchronized (bitmaps) {
+            return bitmaps[column.ordinal()];
+        }
+    }
+
+    /**
+     * Get the trigram index of the names, as name ~= filters compare them.
+     *
+     * @return the index
+     */
+    TrigramIndex trigrams() {
+        return trigrams;
+    }
+
+    /**
+     * Get the sorted names index.
+     *
+     * @return the index
+     */
+    NameIndex nameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Check if a row holds exactly the values of a game.
+     *
+     * @param row  the row
+     * @param game the game to compare with
+     * @return true if every field is the same
+     */
+    boolean hasSameValues(int row, BoardGame game) {
+        return ids[row] == game.getId() && names[row].equals(game.getName())
+                && minPlayers[row] == game.getMinPlayers()
+                && maxPlayers[row] == game.getMaxPlayers()
+                && minPlayTimes[row] == game.getMinPlayTime()
+                && maxPlayTimes[row] == game.getMaxPlayTime()
+                && Double.compare(difficulties[row], game.getDifficulty()) == 0
+                && ranks[row] == game.getRank()
+                && Double.compare(ratings[row], game.getRating()) == 0
+                && years[row] == game.getYearPublished();
+    }
+
+    /**
+     * Collects the changes to a table: rows to delete, rows to replace with new values and
+     * games to add. The table itself is not changed, the changes make a new one.
+     */
+    static final class Patch {
+        /** the table being changed. */
+        private final GameTable base;
+        /** rows deleted, the ones the base table had deleted included. */
+        private final long[] deleted;
+        /** rows of the base table that are deleted or replaced. */
+        private final long[] removed;
+        /** number of rows deleted. */
+        private int deletes;
+        /** the new values of the rows being replaced, by row. */
+        private final Map<Integer, BoardGame> replaced = new TreeMap<>();
+        /** the games to add, in order. */
+        private final List<BoardGame> added = new ArrayList<>();
+
+        /**
+         * Constructor for the patch.
+         *
+         * @param base the table to change
+         */
+        Patch(GameTable base) {
+            this.base = base;
+            this.deleted = base.deleted.clone();
+            this.removed = new long[base.deleted.length];
+        }
+
+        /**
+         * Deletes a row.
+         *
+         * @param row the row, not deleted or replaced yet
+         * @throws IllegalArgumentException if the row is deleted or replaced already
+         */
+        void delete(int row) {
+            remove(row);
+            deleted[row >>> 6] |= 1L << row;
+            deletes++;
+        }
+
+        /**
+         * Replaces the values of a row, which keeps its place.
+         *
+         * @param row  the row, not deleted or replaced yet
+         * @param game the new values
+         * @throws IllegalArgumentException if the row is deleted or replaced already
+         */
+        void replace(int row, BoardGame game) {
+            remove(row);
+            replaced.put(row, game);
+        }
+
+        /**
+         * Adds a game as a new row after the rows of the table.
+         *
+         * @param game the game
+         * @return the row the game will be in
+         */
+        int add(BoardGame game) {
+            added.add(game);
+            return base.size + added.size() - 1;
+        }
+
+        /**
+         * Builds the patched table.
+         *
+         * @return the new table
+         */
+        GameTable build() {
+            return new GameTable(this);
+        }
+
+        /**
+         * Marks a row of the table as removed.
+         *
+         * @param row the row
+         * @throws IllegalArgumentException if the row is deleted or removed already
+         */
+        private void remove(int row) {
+            if (base.isDeleted(row) || BitmapIndex.contains(removed, row)) {
+                throw new IllegalArgumentException("row " + row + " is already gone");
+            }
+            removed[row >>> 6] |= 1L << row;
+        }
+    }
+
+    /**
+     * Collects rows for a new table.
+     */
+    static final class Builder {
+        /** rows added so far. */
+        private int size;
+        /** game names. */
+        private String[] names;
+        /** objectids. */
+        private int[] ids;
+        /** minimum number of players. */
+        private int[] minPlayers;
+        /** maximum number of players. */
+        private int[] maxPlayers;
+        /** minimum play time in minutes. */
+        private int[] minPlayTimes;
+        /** maximum play time in minutes. */
+        private int[] maxPlayTimes;
+        /** rank of the game. */
+        private int[] ranks;
+        /** year the game was published. */
+        private int[] years;
+        /** average difficulty of the game. */
+        private double[] difficulties;
+        /** average rating of the game. */
+        private double[] ratings;
+
+        /**
+         * Constructor for the builder.
+         *
+         * @param capacity expected number of rows, the builder grows if more are added
+         */
+        Builder(int capacity) {
+            resize(Math.max(capacity, 1));
+        }
+
+        /**
+         * Adds a game as the next row.
+         *
+         * @param game the game
+         * @return the row the game was added as
+         */
+        int add(BoardGame game) {
+            return add(game.getName(), game.getId(), game.getMinPlayers(), game.getMaxPlayers(),
+                    game.getMinPlayTime(), game.getMaxPlayTime(), game.getDifficulty(),
+                    game.getRank(), game.getRating(), game.getYearPublished());
+        }
+
+        /**
+         * Copies a row of another table as the next row.
+         *
+         * @param table the table to copy from
+         * @param row   the row to copy
+         * @return the row the copy was added as
+         */
+        int add(GameTable table, int row) {
+            return add(table.names[row], table.ids[row], table.minPlayers[row],
+                    table.maxPlayers[row], table.minPlayTimes[row], table.maxPlayTimes[row],
+                    table.difficulties[row], table.ranks[row], table.ratings[row],
+                    table.years[row]);
+        }
+
+        /**
+         * Adds a row from its values.
+         *
+         * @param name        game name
+         * @param id          objectid
+         * @param minPlayer   minimum number of players
+         * @param maxPlayer   maximum number of players
+         * @param minPlayTime minimum play time in minutes
+         * @param maxPlayTime maximum play time in minutes
+         * @param difficulty  average difficulty of the game
+         * @param rank        rank of the game
+         * @param rating      average rating of the game
+         * @param year        year the game was published
+         * @return the row the values were added as
+         */
+        int add(String name, int id, int minPlayer, int maxPlayer, int minPlayTime,
+                int maxPlayTime, double difficulty, int rank, double rating, int year) {
+            if (size == ids.length) {
+                resize(size * 2);
+            }
+            names[size] = name;
+            ids[size] = id;
+            minPlayers[size] = minPlayer;
+            maxPlayers[size] = maxPlayer;
+            minPlayTimes[size] = minPlayTime;
+            maxPlayTimes[size] = maxPlayTime;
+            difficulties[size] = difficulty;
+            ranks[size] = rank;
+            ratings[size] = rating;
+            years[size] = year;
+            return size++;
+        }
+
+        /**
+         * Builds the table from the rows added so far.
+         *
+         * @return the table
+         */
+        GameTable build() {
+            return new GameTable(this);
+        }
+
+        /**
+         * Grows (or first creates) the column arrays.
+         *
+         * @param capacity the new number of rows the arrays can hold
+         */
+        private void resize(int capacity) {
+            names = names == null ? new String[capacity] : Arrays.copyOf(names, capacity);
+            ids = ids == null ? new int[capacity] : Arrays.copyOf(ids, capacity);
+            minPlayers = minPlayers == null ? new int[capacity] : Arrays.copyOf(minPlayers, capacity);
+            maxPlayers = maxPlayers == null ? new int[capacity] : Arrays.copyOf(maxPlayers, capacity);
+            minPlayTimes = minPlayTimes == null ? new int[capacity]
+                    : Arrays.copyOf(minPlayTimes, capacity);
+            maxPlayTimes = maxPlayTimes == null ? new int[capacity]
+                    : Arrays.copyOf(maxPlayTimes, capacity);
+            ranks = ranks == null ? new int[capacity] : Arrays.copyOf(ranks, capacity);
+            years = years == null ? new int[capacity] : Arrays.copyOf(years, capacity);
+            difficulties = difficulties == null ? new double[capacity]
+                    : Arrays.copyOf(difficulties, capacity);
+            ratings = ratings == null ? new double[capacity] : Arrays.copyOf(ratings, capacity);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package student;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list of games read straight from the rows of a table, building each BoardGame only when
+ * it is asked for.
+ *
+ * Getting one game by position, or a sub list, costs the same however many games the view
+ * holds, so a consumer that only needs a few of them never builds the rest. The view can not
+ * be changed. It keeps the table and rows it was made with, so it still holds the same games
+ * after the planner moves on to another filter or a refresh.
+ */
+final class GameView extends AbstractList<BoardGame> implements RandomAccess {
+    /** the table the games are read from. */
+    private final GameTable table;
+    /** the rows, not to be changed. */
+    private final int[] rows;
+    /** index of the first row in the view. */
+    private final int from;
+    /** index after the last row in the view. */
+    private final int to;
+
+    /**
+     * Constructor for a view of part of a list of rows.
+     *
+     * @param table the table the rows are in
+     * @param rows  the rows, shared and not to be changed
+     * @param from  index of the first row to include
+     * @param to    index after the last row to include
+     */
+    GameView(GameTable table, int[] rows, int from, int to) {
+        this.table = table;
+        this.rows = rows;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Builds the game at a position.
+     *
+     * @param index the position in the view
+     * @return the game
+     * @throws IndexOutOfBoundsException if the index is not in the view
+     */
+    @Override
+    public BoardGame get(int index) {
+        return table.game(rows[from + Objects.checkIndex(index, to - from)]);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * Gets part of the view, without building any games.
+     *
+     * @param fromIndex position of the first game to include
+     * @param toIndex   position after the last game to include
+     * @return a view of the games between the positions
+     * @throws IndexOutOfBoundsException if the positions are not in the view
+     */
+    @Override
+    public List<BoardGame> subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, to - from);
+        return new GameView(table, rows, from + fromIndex, from + toIndex);
+    }
+}
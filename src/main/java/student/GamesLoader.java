@@ -1,20 +1,35 @@
 package student;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Loads the games from the csv file into a set of BoardGame objects.
  * This file is stored in the resources folder, and while it is
- * passed in - often tends to be more fixed.
+ * passed in - often tends to be more fixed. A path on the filesystem
+ * can also be passed in, and the file can be gzip compressed.
  * 
  * It assumes there are no comma's in the data (and does not handle errors if
  * there are extra commas like in the name).
@@ -23,6 +38,10 @@ import java.util.stream.Collectors;
 public final class GamesLoader {
     /** Standard csv delim. */
     private static final String DELIMITER = ",";
+    /** first two bytes of a gzip file. */
+    private static final int GZIP_MAGIC = GZIPInputStream.GZIP_MAGIC;
+    /** size of the read buffer, grows if a single line is longer. */
+    private static final int BUFFER_SIZE = 1 << 16;
 
     /** private constructor to prevent instantiation. */
     private GamesLoader() {
@@ -35,64 +54,527 @@ public final class GamesLoader {
      * @return a set of BoardGame objects
      */
     public static Set<BoardGame> loadGamesFile(String filename) {
+        return loadGamesFile(filename, new LoadStats());
+    }
 
-        Set<BoardGame> games = new HashSet<>();
+    /**
+     * Loads the games from the csv file into a set of BoardGame objects.
+     * 
+     * The file is streamed through a fixed size byte buffer, so lines are never held
+     * onto. Each line is parsed straight from the bytes, only reading the columns that
+     * GameData uses. The header is processed once, and the games keep the order they
+     * have in the file.
+     * 
+     * @param filename the name of the file to load
+     * @param stats    filled in with the number of rows loaded and skipped, and the time taken
+     * @return a set of BoardGame objects
+     */
+    public static Set<BoardGame> loadGamesFile(String filename, LoadStats stats) {
+        Set<BoardGame> games = new LinkedHashSet<>();
+        long start = System.nanoTime();
 
-        List<String> lines;
-        try {
-            // this is so we can store the files in the resources folder
-            InputStream is = GamesLoader.class.getResourceAsStream(filename);
-            InputStreamReader isr = new InputStreamReader(is, StandardCharsets.UTF_8);
-            BufferedReader reader = new BufferedReader(isr);
-            lines = reader.lines().collect(Collectors.toList());
+        try (InputStream is = openSource(filename)) {
+            readGames(is, games, stats);
         } catch (Exception e) {
             System.err.println("Error reading file: " + e.getMessage());
-            return games;
+        } finally {
+            stats.setElapsedNanos(System.nanoTime() - start);
         }
-        if (lines == null || lines.isEmpty()) {
-            return games;
+        return games;
+    }
+
+    /**
+     * Loads the games from a snapshot of the csv file, building the snapshot if needed.
+     * 
+     * The snapshot is kept in a bgarena folder in the user's cache directory, named after
+     * the csv.
+     * 
+     * @param filename the name of the file to load
+     * @return a set of BoardGame objects, the same as {@link #loadGamesFile(String)}
+     * @see #loadGamesCached(String, Path, LoadStats)
+     */
+    public static Set<BoardGame> loadGamesCached(String filename) {
+        return loadGamesCached(filename, defaultSnapshot(filename), new LoadStats());
+    }
+
+    /**
+     * Loads the games from a snapshot of the csv file, building the snapshot if needed.
+     * 
+     * This builds a BoardGame for every row, {@link #loadDatasetCached(String, Path,
+     * LoadStats)} keeps the games in columns instead.
+     * 
+     * @param filename the name of the file to load
+     * @param snapshot where the snapshot is kept
+     * @param stats    filled in with the number of rows loaded and skipped, and the time taken
+     * @return a set of BoardGame objects
+     */
+    public static Set<BoardGame> loadGamesCached(String filename, Path snapshot,
+            LoadStats stats) {
+        GameTable table = loadTableCached(filename, snapshot, stats);
+        Set<BoardGame> games = new LinkedHashSet<>();
+        for (int row = 0; row < table.size(); row++) {
+            games.add(table.game(row));
         }
+        return games;
+    }
 
-        Map<GameData, Integer> columnMap = processHeader(lines.remove(0));
+    /**
+     * Loads a dataset from a snapshot of the csv file, building the snapshot if needed.
+     * 
+     * The snapshot is kept in a bgarena folder in the user's cache directory, named after
+     * the csv.
+     * 
+     * @param filename the name of the file to load
+     * @return the games, ready to be shared by planning sessions
+     * @see #loadDatasetCached(String, Path, LoadStats)
+     */
+    public static GameDataset loadDatasetCached(String filename) {
+        return loadDatasetCached(filename, defaultSnapshot(filename), new LoadStats());
+    }
 
-        games = lines.stream().map(line -> toBoardGame(line, columnMap))
-                .filter(game -> game != null).collect(Collectors.toSet());
+    /**
+     * Loads a dataset from a snapshot of the csv file, building the snapshot if needed.
+     * 
+     * The csv is not read if its length and modified time match the ones the snapshot was
+     * built from, and is only checksummed (not parsed) if just the time changed. If the
+     * snapshot matches, the columns come straight from the memory mapped snapshot, with no
+     * BoardGame built for them. If the snapshot is missing or stale, the csv is parsed as
+     * normal, checksumming its bytes as they are read, and a new snapshot is written for the
+     * next start. No snapshot is written if the csv could not be read to the end or had no
+     * games, so a failed load is tried again next time. Failing to write the snapshot does
+     * not stop the load.
+     * 
+     * @param filename the name of the file to load
+     * @param snapshot where the snapshot is kept
+     * @param stats    filled in with the number of rows loaded and skipped, and the time taken
+     * @return the games, ready to be shared by planning sessions
+     */
+    public static GameDataset loadDatasetCached(String filename, Path snapshot,
+            LoadStats stats) {
+        return new GameDataset(loadTableCached(filename, snapshot, stats));
+    }
 
-        return games;
+    /**
+     * Loads the table of a csv file from its snapshot, see {@link #loadDatasetCached(String,
+     * Path, LoadStats)}.
+     * 
+     * @param filename the name of the file to load
+     * @param snapshot where the snapshot is kept
+     * @param stats    filled in with the number of rows loaded and skipped, and the time taken
+     * @return the table of the games
+     */
+    private static GameTable loadTableCached(String filename, Path snapshot, LoadStats stats) {
+        long start = System.nanoTime();
+        Source source = Source.of(filename);
+        if (source == null) {
+            return GameTable.of(loadGamesFile(filename, stats));
+        }
 
+        GameTable cached = GameSnapshot.read(snapshot, source.length, source.modified,
+                source::checksum);
+        if (cached != null) {
+            if (source.isChecksummed()) {
+                // same csv with a new time, keep the time so the next start skips the checksum
+                writeSnapshot(snapshot, cached, source, source.checksum());
+            }
+            stats.addRowsLoaded(cached.size());
+            stats.setElapsedNanos(System.nanoTime() - start);
+            return cached;
+        }
+
+        Set<BoardGame> games = new LinkedHashSet<>();
+        CRC32C crc = new CRC32C();
+        boolean complete = loadGamesChecked(filename, games, stats, crc);
+        GameTable table = GameTable.of(games);
+        if (complete && table.size() > 0) {
+            writeSnapshot(snapshot, table, source, crc.getValue());
+        }
+        stats.setElapsedNanos(System.nanoTime() - start);
+        return table;
     }
 
     /**
-     * Converts a line from the csv file into a BoardGame object.
+     * Loads the games from a csv file, adding every byte of the file, as it is stored, to a
+     * checksum as it is read. The file is only read once.
      * 
-     * @param line      the line to convert
-     * @param columnMap the map of columns to index
-     * @return a BoardGame object
+     * @param filename the name of the file to load
+     * @param games    where the games are added
+     * @param stats    counts the loaded and skipped rows
+     * @param crc      the checksum, of the whole file once this returns true
+     * @return true if the file was read to the end, false if it could not be read or is
+     *         missing columns, in which case games may hold only some of its games
      */
-    private static BoardGame toBoardGame(String line, Map<GameData, Integer> columnMap) {
-        String[] columns = line.split(DELIMITER);
-        if (columns.length < columnMap.values().stream().max(Integer::compareTo).get()) {
-            return null;
+    private static boolean loadGamesChecked(String filename, Collection<BoardGame> games,
+            LoadStats stats, Checksum crc) {
+        try (CheckedInputStream checked = new CheckedInputStream(openRaw(filename), crc);
+                InputStream is = decompress(checked)) {
+            readGames(is, games, stats);
+            // the parser stops at the end of the text, read what is left for the checksum
+            checked.transferTo(OutputStream.nullOutputStream());
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a csv file, reporting rather than throwing a failure.
+     * 
+     * @param snapshot where the snapshot is kept
+     * @param table    the games of the csv
+     * @param source   the csv
+     * @param checksum the CRC32C checksum of the csv
+     */
+    private static void writeSnapshot(Path snapshot, GameTable table, Source source,
+            long checksum) {
+        try {
+            GameSnapshot.write(snapshot, table, source.length, source.modified, checksum);
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the default place to keep the snapshot of a csv file.
+     * 
+     * Snapshots go in the user's own cache directory, $XDG_CACHE_HOME or ~/.cache, so
+     * users of the same machine never share (or fight over) a folder.
+     * 
+     * @param filename the name of the csv file
+     * @return the snapshot path
+     */
+    static Path defaultSnapshot(String filename) {
+        String name = filename.replaceAll("[^A-Za-z0-9._-]", "_");
+        String xdg = System.getenv("XDG_CACHE_HOME");
+        Path cache = xdg == null || xdg.isEmpty() ? null : filePath(xdg);
+        if (cache == null || !cache.isAbsolute()) {
+            cache = Path.of(System.getProperty("user.home"), ".cache");
+        }
+        return cache.resolve("bgarena").resolve(name + ".snapshot");
+    }
+
+    /**
+     * The length and modified time of a csv file, and its checksum once it is asked for.
+     */
+    private static final class Source {
+        /** the name of the file. */
+        private final String filename;
+        /** length of the file in bytes. */
+        private final long length;
+        /** last modified time, or GameSnapshot.UNKNOWN_TIME. */
+        private final long modified;
+        /** the CRC32C checksum, -1 if it could not be read, null until asked for. */
+        private Long checksum;
+
+        /**
+         * Constructor for a source.
+         * 
+         * @param filename the name of the file
+         * @param length   length of the file in bytes
+         * @param modified last modified time, or GameSnapshot.UNKNOWN_TIME
+         */
+        private Source(String filename, long length, long modified) {
+            this.filename = filename;
+            this.length = length;
+            this.modified = modified;
+        }
+
+        /**
+         * Looks up the length and modified time of a csv file without reading it.
+         * 
+         * @param filename a path on the filesystem, or the name of a classpath resource
+         * @return the source, or null if the file can not be found or its length is not known
+         */
+        static Source of(String filename) {
+            try {
+                Path path = filePath(filename);
+                if (path != null && Files.isRegularFile(path)) {
+                    return new Source(filename, Files.size(path),
+                            Files.getLastModifiedTime(path).toMillis());
+                }
+                URL url = GamesLoader.class.getResource(filename);
+                if (url == null) {
+                    return null;
+                }
+                URLConnection connection = url.openConnection();
+                long length = connection.getContentLengthLong();
+                long modified = connection.getLastModified();
+                // looking up the length can open the file, close it without reading it
+                connection.getInputStream().close();
+                return length < 0 ? null : new Source(filename, length, modified);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Gets the CRC32C checksum of the file, reading it the first time.
+         * 
+         * @return the checksum, or -1 if the file can not be read
+         */
+        long checksum() {
+            if (checksum == null) {
+                checksum = checksumSource(filename);
+            }
+            return checksum;
+        }
+
+        /**
+         * Check if the file was read to checksum it.
+         * 
+         * @return true if the checksum was asked for
+         */
+        boolean isChecksummed() {
+            return checksum != null;
         }
+    }
 
+    /**
+     * Gets the CRC32C checksum of a csv file, without parsing it.
+     * 
+     * @param filename the name of the file
+     * @return the checksum, or -1 if the file can not be read
+     */
+    private static long checksumSource(String filename) {
+        try (InputStream is = openRaw(filename)) {
+            CRC32C crc = new CRC32C();
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = is.read(buf)) >= 0) {
+                crc.update(buf, 0, read);
+            }
+            return crc.getValue();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets a file name as a path on the filesystem.
+     * 
+     * @param filename the name of the file
+     * @return the path, or null if the name is not a valid path here, as a classpath
+     *         resource name may not be
+     */
+    private static Path filePath(String filename) {
         try {
-            BoardGame game = new BoardGame(columns[columnMap.get(GameData.NAME)],
-                    Integer.parseInt(columns[columnMap.get(GameData.ID)]),
-                    Integer.parseInt(columns[columnMap.get(GameData.MIN_PLAYERS)]),
-                    Integer.parseInt(columns[columnMap.get(GameData.MAX_PLAYERS)]),
-                    Integer.parseInt(columns[columnMap.get(GameData.MIN_TIME)]),
-                    Integer.parseInt(columns[columnMap.get(GameData.MAX_TIME)]),
-                    Double.parseDouble(columns[columnMap.get(GameData.DIFFICULTY)]),
-                    Integer.parseInt(columns[columnMap.get(GameData.RANK)]),
-                    Double.parseDouble(columns[columnMap.get(GameData.RATING)]),
-                    Integer.parseInt(columns[columnMap.get(GameData.YEAR)]));
-            return game;
-        } catch (NumberFormatException e) {
-            // skip if there is an issue
+            return Path.of(filename);
+        } catch (InvalidPathException e) {
             return null;
         }
     }
 
+    /**
+     * Loads the games from the csv file using every core of the common fork/join pool.
+     * 
+     * @param filename the name of the file to load
+     * @return a set of BoardGame objects, the same as {@link #loadGamesFile(String)}
+     * @see #loadGamesFileParallel(String, LoadStats, ForkJoinPool)
+     */
+    public static Set<BoardGame> loadGamesFileParallel(String filename) {
+        return loadGamesFileParallel(filename, new LoadStats(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads the games from the csv file in parallel.
+     * 
+     * The file is memory mapped (or read into memory if it is compressed or a classpath
+     * resource), and the lines after the header are split into
+     * byte ranges that always start at the beginning of a line. The ranges are parsed
+     * on the pool and joined back together in file order, so the result (including
+     * which duplicate of an objectid is kept) is identical to the sequential load.
+     * 
+     * @param filename the name of the file to load
+     * @param stats    filled in with the number of rows loaded and skipped, and the time taken
+     * @param pool     the pool to parse on
+     * @return a set of BoardGame objects
+     */
+    public static Set<BoardGame> loadGamesFileParallel(String filename, LoadStats stats,
+            ForkJoinPool pool) {
+        Set<BoardGame> games = new LinkedHashSet<>();
+        long start = System.nanoTime();
+
+        try {
+            ByteBuffer bytes = readFully(filename);
+            int end = bytes.limit();
+            int headerEnd = GameRowParser.indexOf(bytes, (byte) '\n', 0, end);
+            headerEnd = headerEnd < 0 ? end : headerEnd;
+            Map<GameData, Integer> columnMap = readHeader(bytes, headerEnd);
+            if (columnMap == null) {
+                return games;
+            }
+            ChunkedGameParser task = new ChunkedGameParser(bytes, columnMap,
+                    Math.min(headerEnd + 1, end), end);
+            games.addAll(pool.invoke(task));
+            stats.add(task.getStats());
+        } catch (Exception e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        } finally {
+            stats.setElapsedNanos(System.nanoTime() - start);
+        }
+        return games;
+    }
+
+    /**
+     * Opens a csv file for reading, decompressing it if it is gzipped.
+     * 
+     * Compressed files are recognized by the gzip magic bytes rather than the file
+     * name, and are decompressed as they are read, so the parser never waits for the
+     * whole file.
+     * 
+     * @param filename a path on the filesystem, or the name of a classpath resource
+     * @return a stream of the csv text
+     * @throws IOException if the file can not be found or read
+     */
+    static InputStream openSource(String filename) throws IOException {
+        return decompress(openRaw(filename));
+    }
+
+    /**
+     * Wraps the raw bytes of a csv file to read its text, decompressing it if it is gzipped.
+     * 
+     * @param raw the raw file bytes
+     * @return a stream of the csv text, closing it closes raw
+     * @throws IOException if the start of the file can not be read
+     */
+    private static InputStream decompress(InputStream raw) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first == (GZIP_MAGIC & 0xff) && second == (GZIP_MAGIC >>> 8)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    /**
+     * Opens a file without decompressing it.
+     * 
+     * Paths on the filesystem are checked first, so a new dataset can be used without
+     * rebuilding the jar. Anything else is looked up in the resources folder.
+     * 
+     * @param filename a path on the filesystem, or the name of a classpath resource
+     * @return a stream of the raw file bytes
+     * @throws IOException if the file can not be found or read
+     */
+    private static InputStream openRaw(String filename) throws IOException {
+        Path path = filePath(filename);
+        if (path != null && Files.isRegularFile(path)) {
+            return Files.newInputStream(path);
+        }
+        // this is so we can store the files in the resources folder
+        InputStream is = GamesLoader.class.getResourceAsStream(filename);
+        if (is == null) {
+            throw new IOException(filename + " not found");
+        }
+        return is;
+    }
+
+    /**
+     * Gets the whole contents of a csv file as a buffer.
+     * 
+     * Plain files on the filesystem are memory mapped, everything else is read (and
+     * decompressed) into memory.
+     * 
+     * @param filename a path on the filesystem, or the name of a classpath resource
+     * @return the csv text as bytes
+     * @throws IOException if the file can not be found or read
+     */
+    private static ByteBuffer readFully(String filename) throws IOException {
+        Path path = filePath(filename);
+        if (path != null && Files.isRegularFile(path) && Files.size(path) <= Integer.MAX_VALUE) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.limit() < 2 || (mapped.get(0) & 0xff) != (GZIP_MAGIC & 0xff)
+                        || (mapped.get(1) & 0xff) != (GZIP_MAGIC >>> 8)) {
+                    return mapped;
+                }
+            }
+        }
+        try (InputStream is = openSource(filename)) {
+            return ByteBuffer.wrap(is.readAllBytes());
+        }
+    }
+
+    /**
+     * Reads the games from a csv stream.
+     * 
+     * Bytes are read in chunks, every complete line in the chunk is parsed, and the
+     * partial line left at the end is moved to the front before the next read. The buffer
+     * only grows if a single line is longer than it.
+     * 
+     * @param is    the stream to read, starting with the header line
+     * @param games where the games are added
+     * @param stats counts the loaded and skipped rows
+     * @throws IOException if the stream can not be read or is missing columns
+     */
+    private static void readGames(InputStream is, Collection<BoardGame> games, LoadStats stats)
+            throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        int filled = 0;
+        GameRowParser parser = null;
+        boolean eof = false;
+        while (!eof) {
+            int read = is.read(buf, filled, buf.length - filled);
+            eof = read < 0;
+            filled += Math.max(read, 0);
+
+            ByteBuffer bytes = ByteBuffer.wrap(buf);
+            int pos = 0;
+            if (parser == null) {
+                int headerEnd = GameRowParser.indexOf(bytes, (byte) '\n', 0, filled);
+                if (headerEnd < 0 && !eof) {
+                    buf = grow(buf, filled);
+                    continue;
+                }
+                headerEnd = headerEnd < 0 ? filled : headerEnd;
+                Map<GameData, Integer> columnMap = readHeader(bytes, headerEnd);
+                if (columnMap == null) {
+                    return;
+                }
+                parser = new GameRowParser(columnMap);
+                pos = Math.min(headerEnd + 1, filled);
+            }
+            pos = parser.parseLines(bytes, pos, filled, eof, games, stats);
+
+            // keep the partial line for the next read
+            System.arraycopy(buf, pos, buf, 0, filled - pos);
+            filled -= pos;
+            buf = grow(buf, filled);
+        }
+    }
+
+    /**
+     * Decodes the header line at the start of a buffer and maps its columns.
+     * 
+     * @param bytes     the buffer, starting with the header line
+     * @param headerEnd the position of the line end after the header
+     * @return a map of column to index, or null if the header is empty
+     * @throws IOException if the header is missing one of the GameData columns
+     */
+    private static Map<GameData, Integer> readHeader(ByteBuffer bytes, int headerEnd)
+            throws IOException {
+        int length = headerEnd > 0 && bytes.get(headerEnd - 1) == '\r' ? headerEnd - 1 : headerEnd;
+        byte[] line = new byte[length];
+        bytes.get(0, line);
+        String header = new String(line, StandardCharsets.UTF_8);
+        return header.isEmpty() ? null : processHeader(header);
+    }
+
+    /**
+     * Doubles the size of a buffer if it is full.
+     * 
+     * @param buf    the buffer
+     * @param filled the number of bytes in use
+     * @return the same buffer, or a bigger copy of it
+     */
+    private static byte[] grow(byte[] buf, int filled) {
+        return filled < buf.length ? buf : Arrays.copyOf(buf, buf.length * 2);
+    }
+
     /**
      * Processes the header line to determine the column mapping.
      * 
@@ -102,8 +584,9 @@ public final class GamesLoader {
      * 
      * @param header the header line
      * @return a map of column to index
+     * @throws IOException if the header is missing one of the GameData columns
      */
-    private static Map<GameData, Integer> processHeader(String header) {
+    private static Map<GameData, Integer> processHeader(String header) throws IOException {
         Map<GameData, Integer> columnMap = new HashMap<>();
         String[] columns = header.split(DELIMITER);
         for (int i = 0; i < columns.length; i++) {
@@ -114,6 +597,9 @@ public final class GamesLoader {
                 // System.out.println("Ignoring column: " + columns[i]);
             }
         }
+        if (columnMap.size() < GameData.values().length) {
+            throw new IOException("missing columns in header: " + header);
+        }
         return columnMap;
     }
 
@@ -0,0 +1,110 @@
+package student;
+
+/**
+ * Simple counters describing a single load of the games file.
+ *
+ * The loader fills this in as it reads, so after a load you can see how many
+ * rows were turned into games, how many were skipped (bad numbers, missing
+ * columns), and how fast the file was read.
+ */
+public final class LoadStats {
+    /** number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    /** number of nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /** rows that were turned into a BoardGame. */
+    private long rowsLoaded;
+    /** rows that could not be turned into a BoardGame. */
+    private long rowsSkipped;
+    /** time spent loading in nanoseconds. */
+    private long elapsedNanos;
+
+    /**
+     * Get the number of rows that were turned into games.
+     *
+     * @return rows loaded
+     */
+    public long getRowsLoaded() {
+        return rowsLoaded;
+    }
+
+    /**
+     * Get the number of rows that were skipped.
+     *
+     * @return rows skipped
+     */
+    public long getRowsSkipped() {
+        return rowsSkipped;
+    }
+
+    /**
+     * Get the time the load took.
+     *
+     * @return elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Get the throughput of the load, counting both loaded and skipped rows.
+     *
+     * @return rows read per second, or 0 if nothing was timed
+     */
+    public double getRowsPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (rowsLoaded + rowsSkipped) * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /** Counts a row that became a game. */
+    void rowLoaded() {
+        rowsLoaded++;
+    }
+
+    /**
+     * Counts a number of rows that became games.
+     *
+     * @param count the number of rows
+     */
+    void addRowsLoaded(long count) {
+        rowsLoaded += count;
+    }
+
+    /** Counts a row that was skipped. */
+    void rowSkipped() {
+        rowsSkipped++;
+    }
+
+    /**
+     * Adds the row counts of another load to this one.
+     *
+     * @param other the counts to add
+     */
+    void add(LoadStats other) {
+        rowsLoaded += other.rowsLoaded;
+        rowsSkipped += other.rowsSkipped;
+    }
+
+    /**
+     * Records how long the load took.
+     *
+     * @param nanos elapsed time in nanoseconds
+     */
+    void setElapsedNanos(long nanos) {
+        this.elapsedNanos = nanos;
+    }
+
+    /**
+     * Get a one line summary of the load.
+     *
+     * @return summary of the load
+     */
+    @Override
+    public String toString() {
+        return String.format("Loaded %d rows (%d skipped) in %.1f ms, %.0f rows/sec", rowsLoaded,
+                rowsSkipped, elapsedNanos / NANOS_PER_MILLI, getRowsPerSecond());
+    }
+}
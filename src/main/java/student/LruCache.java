@@ -0,0 +1,116 @@
+package student;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded map that evicts the least recently used entries, and counts its hits and misses.
+ *
+ * The bound is on the total weight of the entries. By default every entry weighs 1, so the
+ * bound is a number of entries, but a cache of arrays can weigh them by their length to
+ * bound the memory it holds instead.
+ *
+ * The cache can be shared between threads. Every method holds the cache's lock, which is
+ * only held for the map operation itself, so values should be worked out before they are put.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class LruCache<K, V> {
+    /** most total weight kept. */
+    private final long capacity;
+    /** the weight of a value. */
+    private final ToLongFunction<V> weigher;
+    /** the entries, least recently used first. */
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** total weight of the entries. */
+    private long weight;
+    /** lookups that found an entry. */
+    private long hits;
+    /** lookups that found nothing. */
+    private long misses;
+
+    /**
+     * Constructor for a cache bounded by its number of entries.
+     *
+     * @param capacity most entries kept, at least 1
+     */
+    LruCache(int capacity) {
+        this(capacity, value -> 1);
+    }
+
+    /**
+     * Constructor for a cache bounded by the weight of its entries.
+     *
+     * @param capacity most total weight kept, at least 1
+     * @param weigher  the weight of a value, not negative
+     */
+    LruCache(long capacity, ToLongFunction<V> weigher) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Looks up an entry, marking it as the most recently used.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not cached
+     */
+    V get(K key) {
+        return get(key, null);
+    }
+
+    /**
+     * Looks up an entry under either of two keys, counted as a single lookup.
+     *
+     * @param key       the key tried first
+     * @param alternate the key tried if the first is not cached, may be null
+     * @return the value, or null if neither key is cached
+     */
+    synchronized V get(K key, K alternate) {
+        V value = entries.get(key);
+        if (value == null && alternate != null) {
+            value = entries.get(alternate);
+        }
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Adds or replaces an entry, then evicts the least recently used entries until the cache
+     * is back under its capacity. A value heavier than the whole capacity is not kept.
+     *
+     * @param key   the key
+     * @param value the value, not null
+     */
+    synchronized void put(K key, V value) {
+        V old = entries.put(key, value);
+        if (old != null) {
+            weight -= weigher.applyAsLong(old);
+        }
+        weight += weigher.applyAsLong(value);
+        Iterator<V> eldest = entries.values().iterator();
+        while (weight > capacity && eldest.hasNext()) {
+            weight -= weigher.applyAsLong(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Get the counters of the cache.
+     *
+     * @return a snapshot of the counters
+     */
+    synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, entries.size(), weight, capacity);
+    }
+}
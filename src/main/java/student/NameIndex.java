@@ -0,0 +1,382 @@
+package student;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Sorted views of the game names, so name comparisons and name completion are binary
+ * searches instead of a pass over every name.
+ *
+ * Names are kept two ways, both without spaces as the name filters compare them:
+ * <ul>
+ * <li>in lower case, sorted with compareTo, which answers name <, <=, > and >= exactly</li>
+ * <li>case folded, each character upper cased then lower cased as equalsIgnoreCase compares
+ * them, which finds the candidates for name == and for completion</li>
+ * </ul>
+ *
+ * It also ranks the full names in the order a name sort gives, compareToIgnoreCase, so sorts
+ * can compare the ranks instead of the names. The ranks are worked out from the folded
+ * names too, see {@link NameKey}. Rows a refresh deleted from the table are in no order.
+ */
+final class NameIndex {
+    /** the lower case names without spaces, by row. */
+    private final String[] lower;
+    /** the rows sorted by lower case name. */
+    private final int[] byLower;
+    /** the case folded names without spaces, by row. */
+    private final String[] folded;
+    /** the rows sorted by case folded name. */
+    private final int[] byFolded;
+    /** the rank of each row, for completion. */
+    private final int[] ranks;
+    /** the rows sorted in name sort order, rows whose names tie in row order. */
+    private final int[] bySort;
+    /** the rank of the name of each row in name sort order, names that tie share a rank. */
+    private final int[] sortRanks;
+    /** number of distinct sort ranks. */
+    private final int distinct;
+
+    /**
+     * Constructor for the index.
+     *
+     * @param lower     the lower case names by row
+     * @param byLower   the rows sorted by lower case name
+     * @param folded    the case folded names by row
+     * @param byFolded  the rows sorted by case folded name
+     * @param ranks     the rank of each row
+     * @param bySort    the rows sorted in name sort order
+     * @param sortRanks the rank of the name of each row in name sort order
+     * @param distinct  number of distinct sort ranks
+     */
+    private NameIndex(String[] lower, int[] byLower, String[] folded, int[] byFolded,
+            int[] ranks, int[] bySort, int[] sortRanks, int distinct) {
+        this.lower = lower;
+        this.byLower = byLower;
+        this.folded = folded;
+        this.byFolded = byFolded;
+        this.ranks = ranks;
+        this.bySort = bySort;
+        this.sortRanks = sortRanks;
+        this.distinct = distinct;
+    }
+
+    /**
+     * Builds the index of the names of a table.
+     *
+     * @param table the table, with no deleted rows
+     * @return the index
+     */
+    static NameIndex of(GameTable table) {
+        String[] lower = table.lowerFilterNames();
+        String[] folded = new String[table.size()];
+        for (int row = 0; row < folded.length; row++) {
+            folded[row] = fold(table.filterNames()[row]);
+        }
+        int[] sortRanks = new int[table.size()];
+        int distinct = rankNames(table.names(), sortRanks);
+        // counting sort by rank, which keeps rows that tie in row order
+        int[] starts = new int[distinct + 1];
+        for (int rank : sortRanks) {
+            starts[rank + 1]++;
+        }
+        for (int i = 0; i < distinct; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] bySort = new int[sortRanks.length];
+        for (int row = 0; row < sortRanks.length; row++) {
+            bySort[starts[sortRanks[row]]++] = row;
+        }
+        return new NameIndex(lower, sortRows(lower), folded, sortRows(folded),
+                table.intColumn(GameData.RANK), bySort, sortRanks, distinct);
+    }
+
+    /**
+     * Builds the index of a patched table from the index of the table it was patched from.
+     *
+     * Only the fresh names are folded. The sorted rows are patched, dropping the removed rows
+     * and merging the fresh ones in, and the sort ranks are counted again along the patched
+     * order, comparing names only next to a fresh row, as rows that were there before keep
+     * the order their old ranks give.
+     *
+     * @param table   the patched table
+     * @param removed the rows of the old table that were deleted or replaced
+     * @param fresh   the rows of the patched table that were replaced or added
+     * @return the index of the patched table
+     */
+    NameIndex patch(GameTable table, long[] removed, int[] fresh) {
+        String[] newLower = table.lowerFilterNames();
+        String[] newFolded = Arrays.copyOf(folded, table.size());
+        long[] isFresh = new long[BitmapIndex.words(table.size())];
+        for (int row : fresh) {
+            newFolded[row] = fold(table.filterNames()[row]);
+            isFresh[row >>> 6] |= 1L << row;
+        }
+        String[] names = table.names();
+        int[] newBySort = Sorting.patchRows(bySort, removed, fresh,
+                (row1, row2) -> byRow(compareNames(names, row1, row2), row1, row2));
+        int[] newSortRanks = new int[table.size()];
+        int rank = 0;
+        for (int i = 1; i < newBySort.length; i++) {
+            int previous = newBySort[i - 1];
+            int row = newBySort[i];
+            boolean tie = BitmapIndex.contains(isFresh, previous)
+                    || BitmapIndex.contains(isFresh, row)
+                    ? compareNames(names, previous, row) == 0
+                    : sortRanks[previous] == sortRanks[row];
+            if (!tie) {
+                rank++;
+            }
+            newSortRanks[row] = rank;
+        }
+        return new NameIndex(newLower,
+                Sorting.patchRows(byLower, removed, fresh,
+                        (row1, row2) -> byRow(newLower[row1].compareTo(newLower[row2]), row1,
+                                row2)),
+                newFolded,
+                Sorting.patchRows(byFolded, removed, fresh,
+                        (row1, row2) -> byRow(newFolded[row1].compareTo(newFolded[row2]), row1,
+                                row2)),
+                table.intColumn(GameData.RANK), newBySort, newSortRanks,
+                newBySort.length == 0 ? 0 : rank + 1);
+    }
+
+    /**
+     * Compares the names of two rows in name sort order.
+     *
+     * @param names the names by row
+     * @param row1  the first row
+     * @param row2  the second row
+     * @return below 0, 0 or above 0 as compareToIgnoreCase would
+     */
+    private static int compareNames(String[] names, int row1, int row2) {
+        return new NameKey(names[row1]).compareTo(new NameKey(names[row2]));
+    }
+
+    /**
+     * Breaks a tie between two rows by their row order.
+     *
+     * @param compare the result of comparing their names
+     * @param row1    the first row
+     * @param row2    the second row
+     * @return compare, or the order of the rows if it is 0
+     */
+    private static int byRow(int compare, int row1, int row2) {
+        return compare != 0 ? compare : Integer.compare(row1, row2);
+    }
+
+    /**
+     * Sorts rows by their text with compareTo, rows with the same text staying in row order.
+     *
+     * Collections repeat names a lot, so only the distinct names are sorted, and the rows
+     * are then counting sorted by the position of their name.
+     *
+     * @param texts the text of each row
+     * @return the rows, sorted
+     */
+    private static int[] sortRows(String[] texts) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (String text : texts) {
+            positions.putIfAbsent(text, positions.size());
+        }
+        String[] distinct = positions.keySet().toArray(new String[0]);
+        Arrays.sort(distinct);
+        int[] starts = new int[distinct.length + 1];
+        for (int i = 0; i < distinct.length; i++) {
+            positions.put(distinct[i], i);
+        }
+        int[] position = new int[texts.length];
+        for (int row = 0; row < texts.length; row++) {
+            position[row] = positions.get(texts[row]);
+            starts[position[row] + 1]++;
+        }
+        for (int i = 0; i < distinct.length; i++) {
+            starts[i + 1] += starts[i];
+        }
+        int[] sorted = new int[texts.length];
+        for (int row = 0; row < texts.length; row++) {
+            sorted[starts[position[row]]++] = row;
+        }
+        return sorted;
+    }
+
+    /**
+     * Ranks names in compareToIgnoreCase order, only sorting the distinct names, by their
+     * {@link NameKey}.
+     *
+     * @param names the name of each row
+     * @param ranks where the rank of each row goes
+     * @return the number of distinct ranks
+     */
+    private static int rankNames(String[] names, int[] ranks) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (String name : names) {
+            positions.putIfAbsent(name, 0);
+        }
+        NameKey[] distinct = new NameKey[positions.size()];
+        int count = 0;
+        for (String name : positions.keySet()) {
+            distinct[count++] = new NameKey(name);
+        }
+        Arrays.sort(distinct);
+        int rank = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i > 0 && distinct[i - 1].compareTo(distinct[i]) != 0) {
+                rank++;
+            }
+            positions.put(distinct[i].toString(), rank);
+        }
+        for (int row = 0; row < names.length; row++) {
+            ranks[row] = positions.get(names[row]);
+        }
+        return distinct.length == 0 ? 0 : rank + 1;
+    }
+
+    /**
+     * Get the rank of the name of each row in name sort order.
+     *
+     * @return the ranks by row, not to be changed
+     */
+    int[] sortRanks() {
+        return sortRanks;
+    }
+
+    /**
+     * Get the number of distinct name sort ranks.
+     *
+     * @return one more than the largest rank
+     */
+    int distinct() {
+        return distinct;
+    }
+
+    /**
+     * Finds the rows that may match a condition on the name.
+     *
+     * @param condition a condition on NAME
+     * @return the rows, exact for the range operations and candidates for ==, or null if the
+     *         operation can not be answered from the index
+     */
+    RowRange range(FilterCondition condition) {
+        String value = condition.getLowerValue();
+        switch (condition.getOperation()) {
+            case EQUALS:
+                String key = fold(condition.getValue());
+                return new RowRange(byFolded, firstAtLeast(byFolded, folded, key, false),
+                        firstAtLeast(byFolded, folded, key, true), false);
+            case GREATER_THAN:
+                return new RowRange(byLower, firstAtLeast(byLower, lower, value, true),
+                        byLower.length, true);
+            case GREATER_THAN_EQUALS:
+                return new RowRange(byLower, firstAtLeast(byLower, lower, value, false),
+                        byLower.length, true);
+            case LESS_THAN:
+                return new RowRange(byLower, 0, firstAtLeast(byLower, lower, value, false), true);
+            case LESS_THAN_EQUALS:
+                return new RowRange(byLower, 0, firstAtLeast(byLower, lower, value, true), true);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Finds the best ranked games whose name starts with a prefix, ignoring case and spaces.
+     *
+     * @param prefix the start of the name
+     * @param limit  most rows to return
+     * @return the rows, best rank first, with unranked games (rank 0 or less) last and ties
+     *         in name order
+     */
+    int[] complete(String prefix, int limit) {
+        String key = fold(prefix.replace(" ", ""));
+        int from = firstAtLeast(byFolded, folded, key, false);
+        // names starting with the prefix come right after it, up to the first that does not
+        int low = from;
+        int high = byFolded.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (folded[byFolded[mid]].startsWith(key)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // keep the best limit positions, the worst on top of the heap
+        PriorityQueue<Integer> best = new PriorityQueue<>((p1, p2) -> compareRank(p2, p1));
+        for (int at = from; at < low && limit > 0; at++) {
+            if (best.size() < limit) {
+                best.add(at);
+            } else if (compareRank(at, best.peek()) < 0) {
+                best.poll();
+                best.add(at);
+            }
+        }
+        int[] rows = new int[best.size()];
+        for (int i = rows.length - 1; i >= 0; i--) {
+            rows[i] = byFolded[best.poll()];
+        }
+        return rows;
+    }
+
+    /**
+     * Compares two positions of the folded order by rank, unranked last, then by position.
+     *
+     * @param p1 the first position
+     * @param p2 the second position
+     * @return below 0 if p1 comes first
+     */
+    private int compareRank(int p1, int p2) {
+        int rank1 = ranks[byFolded[p1]];
+        int rank2 = ranks[byFolded[p2]];
+        if (rank1 > 0 != rank2 > 0) {
+            return rank1 > 0 ? -1 : 1;
+        }
+        int compare = Integer.compare(rank1, rank2);
+        return compare != 0 ? compare : Integer.compare(p1, p2);
+    }
+
+    /**
+     * Finds the first position whose name is at least (or above) a key.
+     *
+     * @param order the rows, sorted by name
+     * @param names the names by row
+     * @param key   the key
+     * @param above true to skip names equal to the key
+     * @return the position, order.length if there is none
+     */
+    private static int firstAtLeast(int[] order, String[] names, String key, boolean above) {
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int compare = names[order[mid]].compareTo(key);
+            if (compare < 0 || above && compare == 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Case folds text the way equalsIgnoreCase compares it: every character upper cased,
+     * then lower cased.
+     *
+     * @param text the text
+     * @return the folded text
+     */
+    static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            int cp = text.codePointAt(i);
+            if (Character.isSupplementaryCodePoint(cp)) {
+                i++;
+            }
+            folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(cp)));
+        }
+        return folded.toString();
+    }
+}
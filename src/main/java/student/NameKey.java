@@ -0,0 +1,75 @@
+package student;
+
+/**
+ * A game name with its case folded form, worked out once so names can be sorted without
+ * compareToIgnoreCase folding each character again on every comparison.
+ *
+ * Keys compare exactly the way compareToIgnoreCase compares their names. It folds each pair
+ * of characters that differ with {@link NameIndex#fold(String)}'s upper then lower case, and
+ * returns the difference of the first pair that still differs, else the difference in
+ * length. For names without surrogates each character folds to one character, so that is
+ * the same as comparing the folded names with compareTo. Names with surrogates are compared
+ * with compareToIgnoreCase itself, as it switches between code units and code points there.
+ *
+ * A locale collator is not used on purpose. It weighs letters, accents and punctuation by
+ * the rules of a locale rather than by character value, so sorting by name would give a
+ * different order than the planner always has, and one that changes with the locale.
+ *
+ * The order is not consistent with equals, two keys of names that only differ in case
+ * compare as 0.
+ */
+final class NameKey implements Comparable<NameKey> {
+    /** the name. */
+    private final String name;
+    /** the case folded name, or null if the name has surrogates. */
+    private final String folded;
+
+    /**
+     * Constructor for the key of a name.
+     *
+     * @param name the name
+     */
+    NameKey(String name) {
+        this.name = name;
+        this.folded = hasSurrogates(name) ? null : NameIndex.fold(name);
+    }
+
+    /**
+     * Compares two names like compareToIgnoreCase.
+     *
+     * @param other the key of the other name
+     * @return below 0, 0 or above 0 as compareToIgnoreCase would
+     */
+    @Override
+    public int compareTo(NameKey other) {
+        if (folded == null || other.folded == null) {
+            return name.compareToIgnoreCase(other.name);
+        }
+        return folded.compareTo(other.folded);
+    }
+
+    /**
+     * Check if text holds any surrogate code units.
+     *
+     * @param text the text
+     * @return true if a character is a high or low surrogate
+     */
+    private static boolean hasSurrogates(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isSurrogate(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the name the key is for.
+     *
+     * @return the name
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,25 +1,90 @@
 package student;
 
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+/**
+ * A planning session over a {@link GameDataset}: the current filtered games of one user.
+ *
+ * The games, their indexes and the caches belong to the dataset, so sessions are cheap and
+ * any number of them can share one dataset. A session only holds the rows of its current
+ * games and their order. Every method holds the session's lock while it reads or changes
+ * that state, so a session can be used from many threads, and sessions never wait on each
+ * other apart from the brief locks of the shared caches. The lists and streams a session
+ * returns are views of the games at the time, a later filter does not change them.
+ */
 public class Planner implements IPlanner {
+    /** a page is found by walking an index if that is likely to test 1 / 4 of the rows or less. */
+    private static final int PAGE_WALK_SHARE = 4;
+    /** sets of at least this many rows are filtered and sorted in parallel by default. */
+    public static final int DEFAULT_PARALLEL_ROWS = 1 << 16;
+    /** the table is compacted once more than 1 / COMPACT_SHARE of its rows are deleted. */
+    private static final int COMPACT_SHARE = 4;
 
-    /** hold the original board games. */
-    private final Set<BoardGame> originalGames;
+    /** version of the collection, changes every time a refresh changes the games. */
+    private long version;
 
-    /** hold the current filtered board games. */
-    private Set<BoardGame> currentGames;
+    /** the query the current rows came from, or null when they are every row in order. */
+    private QueryKey currentQuery;
+
+    /** the games and caches the session works on, changed only by a refresh or compaction. */
+    private GameDataset data;
+
+    /** rows of the current filtered board games, in their current order. */
+    private int[] currentRows;
+
+    /** the keys the current rows are sorted on, empty if they are in no known order. */
+    private List<SortKey> currentOrder = List.of();
+
+    /** works out the current rows when they are next needed, null if they are known. */
+    private Supplier<int[]> pendingRows;
+
+    /** the pool large sets are filtered and sorted on, or null to never go parallel. */
+    private ForkJoinPool pool = ForkJoinPool.getCommonPoolParallelism() > 1
+            ? ForkJoinPool.commonPool() : null;
+
+    /** sets of at least this many rows are filtered and sorted on the pool. */
+    private int parallelRows = DEFAULT_PARALLEL_ROWS;
+
+    /** the table being compacted in the background, or null. */
+    private GameTable compacting;
+
+    /** the compacted table, once it is built, or null if no table is being compacted. */
+    private CompletableFuture<GameTable> compacted;
 
     /**
      * Constructor for Planner.
      * @param games the board games.
      */
     public Planner(Set<BoardGame> games) {
-        this.originalGames = new LinkedHashSet<>(games);
-        this.currentGames = new LinkedHashSet<>(games);
+        this(GameDataset.of(games));
+    }
+
+    /**
+     * Constructor for a Planner over an existing table, with empty caches.
+     * @param table the board games, one row per game.
+     */
+    Planner(GameTable table) {
+        this(new GameDataset(table));
+    }
+
+    /**
+     * Constructor for a new session over a shared dataset, starting with every game.
+     * @param data the board games and their caches, shared with other sessions.
+     */
+    public Planner(GameDataset data) {
+        this.data = data;
+        this.currentRows = data.table().allRows();
     }
 
     /**
@@ -30,39 +95,7 @@ public class Planner implements IPlanner {
      */
     @Override
     public Stream<BoardGame> filter(String filter) {
-
-        if (filter.equals("")) {
-            Stream<BoardGame> filteredGames = Sorting.sortOn(currentGames.stream(), GameData.NAME, true);
-            currentGames = filteredGames.collect(Collectors.toCollection(LinkedHashSet::new));
-            return currentGames.stream();
-        }
-
-        if (!filter.contains(",")) {
-            try {
-                Stream<BoardGame> filteredGames = Sorting.sortOn(filterSingle(filter, currentGames.stream()),
-                        GameData.NAME, true);
-                currentGames = filteredGames.collect(Collectors.toCollection(LinkedHashSet::new));
-                return currentGames.stream();
-
-            } catch (IllegalArgumentException e) {
-                return currentGames.stream();
-            }
-        }
-
-        String[] filters = filter.split(",");
-        Stream<BoardGame> filteredStream = currentGames.stream();
-        for (String condition : filters) {
-            try {
-                filteredStream = currentGames.stream();
-                currentGames = filterSingle(condition, filteredStream)
-                        .collect(Collectors.toCollection(LinkedHashSet::new));
-            } catch (IllegalArgumentException e) {
-                break;
-            }
-        }
-        filteredStream = Sorting.sortOn(currentGames.stream(), GameData.NAME, true);
-        currentGames = filteredStream.collect(Collectors.toCollection(LinkedHashSet::new));
-        return currentGames.stream();
+        return filter(filter, GameData.NAME, true);
     }
 
     /**
@@ -74,37 +107,7 @@ public class Planner implements IPlanner {
      */
     @Override
     public Stream<BoardGame> filter(String filter, GameData sortOn) {
-        if (filter.equals("")) {
-            Stream<BoardGame> filteredGames = Sorting.sortOn(currentGames.stream(), sortOn, true);
-            currentGames = filteredGames.collect(Collectors.toCollection(LinkedHashSet::new));
-            return currentGames.stream();
-        }
-
-        if (!filter.contains(",")) {
-            try {
-                Stream<BoardGame> filteredGames = Sorting.sortOn(filterSingle(filter,
-                        currentGames.stream()), sortOn, true);
-                currentGames = filteredGames.collect(Collectors.toCollection(LinkedHashSet::new));
-                return currentGames.stream();
-            } catch (IllegalArgumentException e) {
-                return currentGames.stream();
-            }
-        }
-
-        String[] filters = filter.split(",");
-        Stream<BoardGame> filteredStream = currentGames.stream();
-        for (String condition : filters) {
-            try {
-                filteredStream = currentGames.stream();
-                currentGames = filterSingle(condition, filteredStream)
-                        .collect(Collectors.toCollection(LinkedHashSet::new));
-            } catch (IllegalArgumentException e) {
-                break;
-            }
-        }
-        filteredStream = Sorting.sortOn(currentGames.stream(), sortOn, true);
-        currentGames = filteredStream.collect(Collectors.toCollection(LinkedHashSet::new));
-        return currentGames.stream();
+        return filter(filter, sortOn, true);
     }
 
     /**
@@ -117,82 +120,460 @@ public class Planner implements IPlanner {
      */
     @Override
     public Stream<BoardGame> filter(String filter, GameData sortOn, boolean ascending) {
-        if (filter.equals("")) {
-            Stream<BoardGame> filteredGames = Sorting.sortOn(currentGames.stream(), sortOn, ascending);
-            currentGames = filteredGames
-                    .collect(Collectors.toCollection(LinkedHashSet::new));
-            return currentGames.stream();
-        }
-
-        if (!filter.contains(",")) {
-            try {
-                Stream<BoardGame> filteredGames = Sorting.sortOn(filterSingle(filter, currentGames.stream()),
-                        sortOn, ascending);
-                currentGames = filteredGames
-                        .collect(Collectors.toCollection(LinkedHashSet::new));
-                return currentGames.stream();
-            } catch (IllegalArgumentException e) {
-                return currentGames.stream();
+        return filter(filter, List.of(new SortKey(sortOn, ascending)));
+    }
+
+    /**
+     * Filters board games based on the string filter, and sorts them on several columns:
+     * by the first key, then the games that tie by the second key, and so on.
+     *
+     * The planner keeps track of the order of the current games. Filtering never changes the
+     * order, so if the current games are already sorted on the keys, as they are after a
+     * filter with the same keys, the matching games are not sorted again.
+     * @param filter The filter to apply to the board games.
+     * @param order The columns to sort on, with their directions, the first one first.
+     * @return a stream of board games that match the filter.
+     * @throws IllegalArgumentException if order is null or holds a null key.
+     */
+    public Stream<BoardGame> filter(String filter, List<SortKey> order) {
+        return filterList(filter, order).stream();
+    }
+
+    /**
+     * Filters board games like {@link #filter(String, List)}, but returns the games as a list
+     * that builds each BoardGame only when it is read. Reading one game by its position, as
+     * adding game number n to a game list does, builds just that game.
+     * @param filter The filter to apply to the board games.
+     * @param order The columns to sort on, with their directions, the first one first.
+     * @return an unchangeable list of the board games that match the filter, in order.
+     * @throws IllegalArgumentException if order is null or holds a null key.
+     */
+    public synchronized List<BoardGame> filterList(String filter, List<SortKey> order) {
+        List<SortKey> keys = sortKeys(order);
+        useCompacted(false);
+        GameTable table = data.table();
+        FilterPlan plan = data.plans().get(filter);
+        if (plan.isRejected()) {
+            // invalid filter, leave the current games as they are
+            return currentGames();
+        }
+        QueryKey query = new QueryKey(version, currentQuery, plan.getKey(), keys);
+        int[] rows = data.results().get(query);
+        List<SortKey> sortedOn = keys;
+        if (rows == null) {
+            int[] base = currentRows();
+            int[] matches = plan.apply(table, base, currentQuery == null, poolFor(base));
+            // filtering keeps the order, so the matches may already be sorted
+            if (Sorting.isSortedBy(currentOrder, keys)) {
+                rows = matches;
+                sortedOn = currentOrder;
+            } else {
+                rows = Sorting.sortRows(table, matches, keys, poolFor(matches));
             }
+            data.results().put(query, rows);
         }
+        currentRows = rows;
+        pendingRows = null;
+        currentQuery = query;
+        currentOrder = sortedOn;
+        return currentGames();
+    }
 
-        // the filter string has multiple filters
-        String[] filters = filter.split(",");
-        Stream<BoardGame> filteredStream = currentGames.stream();
-        for (String condition : filters) {
-            try {
-                filteredStream = currentGames.stream();
-                currentGames = filterSingle(condition, filteredStream)
-                        .collect(Collectors.toCollection(LinkedHashSet::new));
-            } catch (IllegalArgumentException e) {
-                break;
-            }
+    /**
+     * Filters board games like {@link #filter(String, GameData, boolean)}, but only returns
+     * one page of the sorted results.
+     *
+     * The filter is progressive as usual, the current games become every game that matches
+     * and not just the page. Only the page is sorted though: its games are picked with a
+     * bounded heap, or when no filter is in place yet and the sort column has an index, by
+     * walking the index in order until the page is full. The rest of the games are only
+     * sorted if they are needed later, by the next filter or a stream of the current games.
+     * @param filter The filter to apply to the board games.
+     * @param sortOn The column to sort the results on.
+     * @param ascending Whether to sort the results in ascending order or descending order.
+     * @param offset the number of games to skip from the start of the sorted results.
+     * @param limit the most games to return.
+     * @return a stream of the games at positions offset to offset + limit - 1 of the stream
+     *         filter(filter, sortOn, ascending) would return.
+     * @throws IllegalArgumentException if offset or limit is negative.
+     */
+    public Stream<BoardGame> filter(String filter, GameData sortOn, boolean ascending,
+                                    int offset, int limit) {
+        return filter(filter, List.of(new SortKey(sortOn, ascending)), offset, limit);
+    }
+
+    /**
+     * Filters board games like {@link #filter(String, List)}, but only returns one page of the
+     * sorted results, the same way as {@link #filter(String, GameData, boolean, int, int)}.
+     * The index is only walked for a single sort key.
+     * @param filter The filter to apply to the board games.
+     * @param order The columns to sort on, with their directions, the first one first.
+     * @param offset the number of games to skip from the start of the sorted results.
+     * @param limit the most games to return.
+     * @return a stream of the games at positions offset to offset + limit - 1 of the stream
+     *         filter(filter, order) would return.
+     * @throws IllegalArgumentException if offset or limit is negative, or order is null or
+     *         holds a null key.
+     */
+    public Stream<BoardGame> filter(String filter, List<SortKey> order, int offset, int limit) {
+        return filterList(filter, order, offset, limit).stream();
+    }
+
+    /**
+     * Filters board games like {@link #filter(String, List, int, int)}, but returns the page
+     * as a list that builds each BoardGame only when it is read.
+     * @param filter The filter to apply to the board games.
+     * @param order The columns to sort on, with their directions, the first one first.
+     * @param offset the number of games to skip from the start of the sorted results.
+     * @param limit the most games to return.
+     * @return an unchangeable list of the games at positions offset to offset + limit - 1 of
+     *         the list filterList(filter, order) would return.
+     * @throws IllegalArgumentException if offset or limit is negative, or order is null or
+     *         holds a null key.
+     */
+    public synchronized List<BoardGame> filterList(String filter, List<SortKey> order,
+                                                   int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit can not be negative");
+        }
+        List<SortKey> keys = sortKeys(order);
+        useCompacted(false);
+        int end = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        FilterPlan plan = data.plans().get(filter);
+        if (plan.isRejected()) {
+            return page(currentRows(), offset, end);
+        }
+        QueryKey query = new QueryKey(version, currentQuery, plan.getKey(), keys);
+        LruCache<QueryKey, int[]> results = data.results();
+        int[] rows = results.get(query);
+        if (rows != null) {
+            currentRows = rows;
+            pendingRows = null;
+            currentQuery = query;
+            currentOrder = keys;
+            return page(rows, offset, end);
+        }
+        boolean inOrder = Sorting.isSortedBy(currentOrder, keys);
+        List<SortKey> sortedOn = inOrder ? currentOrder : keys;
+        GameTable games = data.table();
+        GameData sortOn = keys.isEmpty() ? GameData.ID : keys.get(0).getColumn();
+        ColumnIndex index = keys.size() != 1 || sortOn == GameData.NAME || sortOn == GameData.ID
+                ? null : games.index(sortOn);
+        int[] top;
+        Supplier<int[]> matches;
+        if (currentQuery == null && index != null
+                && end <= plan.share(games) * games.count() / PAGE_WALK_SHARE) {
+            top = index.first(plan.bind(games), keys.get(0).isAscending(), end);
+            matches = () -> {
+                int[] all = games.allRows();
+                return plan.apply(games, all, true, poolFor(all));
+            };
+        } else {
+            int[] base = currentRows();
+            int[] found = plan.apply(games, base, currentQuery == null, poolFor(base));
+            top = inOrder ? Arrays.copyOf(found, Math.min(end, found.length))
+                    : Sorting.selectRows(games, found, keys, end);
+            matches = () -> found;
+        }
+        currentRows = null;
+        currentQuery = query;
+        currentOrder = sortedOn;
+        pendingRows = () -> {
+            int[] found = matches.get();
+            int[] sorted = inOrder ? found : Sorting.sortRows(games, found, keys, poolFor(found));
+            results.put(query, sorted);
+            return sorted;
+        };
+        return page(top, offset, end);
+    }
+
+    /**
+     * Copies a list of sort keys, checking it.
+     * @param order the sort keys.
+     * @return an unchangeable copy of the keys.
+     * @throws IllegalArgumentException if order is null or holds a null key.
+     */
+    private static List<SortKey> sortKeys(List<SortKey> order) {
+        if (order == null || order.stream().anyMatch(key -> key == null)) {
+            throw new IllegalArgumentException("sort keys can not be null");
         }
-        filteredStream = Sorting.sortOn(currentGames.stream(), sortOn, ascending);
-        currentGames = filteredStream.collect(Collectors.toCollection(LinkedHashSet::new));
-        return currentGames.stream();
+        return List.copyOf(order);
     }
 
     /**
-     * Filters games when the filter string contains only one filter condition.
-     * @param filter the filter string used for filtering.
-     * @param filterGames the stream of board games to be filtered.
-     * @return a stream of board games that match the filter condition.
+     * Gets the rows of the current games, sorting them first if a page was all that was
+     * sorted so far.
+     * @return the current rows, in order.
      */
-    private Stream<BoardGame> filterSingle(String filter, Stream<BoardGame> filterGames)
-            throws IllegalArgumentException {
-        Operations operator = Operations.getOperatorFromStr(filter);
-        if (operator == null) {
-            throw new IllegalArgumentException("Invalid condition.");
+    private int[] currentRows() {
+        if (pendingRows != null) {
+            currentRows = pendingRows.get();
+            pendingRows = null;
         }
+        return currentRows;
+    }
 
-        filter = filter.replaceAll(" ", "");
-        String[] parts = filter.split(operator.getOperator());
-        if (parts.length != 2) {
-            throw new IllegalArgumentException("Invalid condition.");
+    /**
+     * Gets part of a list of rows as a list of games.
+     * @param rows the rows.
+     * @param from index of the first row to include.
+     * @param to index after the last row to include, can be past the end of the rows.
+     * @return a view of the games of the rows in the range.
+     */
+    private List<BoardGame> page(int[] rows, int from, int to) {
+        return new GameView(data.table(), rows, Math.min(from, rows.length),
+                Math.min(to, rows.length));
+    }
+
+    /**
+     * Sets how large sets of games are filtered and sorted.
+     *
+     * Filtering and sorting a set of at least minRows games is split across the pool, smaller
+     * sets stay on the calling thread, as splitting them costs more than it saves. The games
+     * and their order are the same either way. By default the common pool is used for sets of
+     * DEFAULT_PARALLEL_ROWS games or more, if it has more than one thread.
+     * @param pool the pool to use, or null to always stay on the calling thread.
+     * @param minRows the fewest games that are worth splitting.
+     */
+    public synchronized void setParallelism(ForkJoinPool pool, int minRows) {
+        this.pool = pool;
+        this.parallelRows = minRows;
+    }
+
+    /**
+     * Picks the pool for some work on a set of rows.
+     * @param rows the rows the work is on.
+     * @return the pool, or null if the work should stay on the calling thread.
+     */
+    private ForkJoinPool poolFor(int[] rows) {
+        return rows.length >= parallelRows ? pool : null;
+    }
+
+    /**
+     * Gets the current games as a list, building each BoardGame as it is read.
+     * @return a view of the current board games, in order.
+     */
+    private List<BoardGame> currentGames() {
+        int[] rows = currentRows();
+        return new GameView(data.table(), rows, 0, rows.length);
+    }
+
+    /**
+     * Suggests games whose name starts with some text, to help with typing a name.
+     * Spaces and case are ignored, and every game is looked at, not just the current filter.
+     * @param prefix the start of the name.
+     * @param limit the most games to suggest.
+     * @return up to limit games, best rank first, with unranked games (rank 0 or less) last.
+     */
+    public synchronized List<BoardGame> complete(String prefix, int limit) {
+        useCompacted(false);
+        GameTable games = data.table();
+        return Arrays.stream(games.nameIndex().complete(prefix, limit)).mapToObj(games::game)
+                .toList();
+    }
+
+    /**
+     * Get the hit and miss counters of the compiled filter cache, shared by every session of
+     * the dataset.
+     * @return a snapshot of the counters.
+     */
+    public synchronized CacheStats getPlanCacheStats() {
+        return data.plans().stats();
+    }
+
+    /**
+     * Get the hit and miss counters of the query result cache, shared by every session of
+     * the dataset.
+     * @return a snapshot of the counters, the weight is the number of rows cached.
+     */
+    public synchronized CacheStats getResultCacheStats() {
+        return data.results().stats();
+    }
+
+    @Override
+    public synchronized void reset() {
+        useCompacted(false);
+        this.currentRows = data.table().allRows();
+        this.pendingRows = null;
+        this.currentQuery = null;
+        this.currentOrder = List.of();
+    }
+
+    /**
+     * Brings the planner up to date with a new copy of the collection.
+     *
+     * Games are matched by objectid (GameData.ID). If several games share an objectid, a
+     * game is matched with the row of the same name first, and the games left are matched
+     * with the rows of that objectid left, in order, as renamed games. Only the differences are
+     * applied, as a {@link GameTable.Patch} of the table: new games are added as new rows at
+     * the end, changed games have their row replaced in place, and games that are gone have
+     * their row marked deleted. Every row keeps its place, and the indexes are patched with
+     * the rows that changed rather than built again.
+     *
+     * Once more than 1 / COMPACT_SHARE of the rows are deleted, a copy of the table without
+     * them, its indexes built in full, is made in the background. The session moves to it
+     * the next time it is used after the copy is ready, unless it has been refreshed since.
+     *
+     * The current filter is kept, with removed games dropped and changed games swapped in
+     * place. New games are not checked against the current filter, so they show up after
+     * the next reset. Changed games keep their place even if their new values are out of
+     * order, until the next filter sorts the games again.
+     *
+     * If anything changed, the session moves to a dataset of its own over the new games,
+     * with an empty result cache. The dataset it started from and the other sessions on it
+     * keep the games they had.
+     *
+     * @param latest the new copy of the collection
+     * @return how many games were inserted, updated, deleted and left unchanged
+     */
+    public synchronized RefreshResult refresh(Collection<BoardGame> latest) {
+        useCompacted(false);
+        GameTable table = data.table();
+        Map<Integer, List<Integer>> loaded = new HashMap<>(); // objectid to its rows
+        for (int row : table.allRows()) {
+            loaded.computeIfAbsent(table.id(row), id -> new ArrayList<>()).add(row);
+        }
+
+        // a game is matched with the row of the same name and objectid, the games left over
+        // are matched with the rows of their objectid left over, in order
+        Set<BoardGame> seen = new HashSet<>();
+        boolean[] kept = new boolean[table.size()];
+        Map<Integer, BoardGame> matched = new HashMap<>(); // row to its game
+        List<BoardGame> unmatched = new ArrayList<>();
+        for (BoardGame game : latest) {
+            if (!seen.add(game)) {
+                continue; // the same game twice, the loader would keep one
+            }
+            int row = freeRow(table, loaded.getOrDefault(game.getId(), List.of()), kept,
+                    game.getName());
+            if (row < 0) {
+                unmatched.add(game);
+            } else {
+                kept[row] = true;
+                matched.put(row, game);
+            }
+        }
+        List<BoardGame> added = new ArrayList<>();
+        for (BoardGame game : unmatched) {
+            int row = freeRow(table, loaded.getOrDefault(game.getId(), List.of()), kept, null);
+            if (row < 0) {
+                added.add(game);
+            } else {
+                kept[row] = true;
+                matched.put(row, game);
+            }
+        }
+        Map<Integer, BoardGame> changed = new HashMap<>(); // row to its new values
+        int unchanged = 0;
+        for (Map.Entry<Integer, BoardGame> match : matched.entrySet()) {
+            if (table.hasSameValues(match.getKey(), match.getValue())) {
+                unchanged++;
+            } else {
+                changed.put(match.getKey(), match.getValue());
+            }
         }
 
-        GameData column;
-        try {
-            column = GameData.fromString(parts[0]);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Invalid condition.");
+        int deleted = 0;
+        GameTable.Patch patch = new GameTable.Patch(table);
+        for (int row = 0; row < table.size(); row++) {
+            BoardGame update = changed.get(row);
+            if (update != null) {
+                patch.replace(row, update);
+            } else if (!kept[row] && !table.isDeleted(row)) {
+                patch.delete(row);
+                deleted++;
+            }
+        }
+        for (BoardGame game : added) {
+            patch.add(game);
         }
 
-        String value;
-        try {
-            value = parts[1];
-            if (column != GameData.NAME) {
-                Integer.parseInt(value);
+        if (deleted + changed.size() + added.size() > 0) {
+            GameTable patched = patch.build();
+            int[] current = currentRows();
+            int[] refreshed = new int[current.length];
+            int count = 0;
+            for (int row : current) {
+                if (!patched.isDeleted(row)) {
+                    refreshed[count++] = row;
+                }
+            }
+            data = data.withTable(patched);
+            currentRows = Arrays.copyOf(refreshed, count);
+            if (!changed.isEmpty()) {
+                // changed values can be out of order
+                currentOrder = List.of();
+            }
+            // results of the old games are no use any more
+            version++;
+            currentQuery = new QueryKey(version, currentQuery, null, null);
+            if (patched.size() - patched.count() > patched.size() / COMPACT_SHARE) {
+                compacting = patched;
+                // on the common pool, or a thread of its own if the pool has one thread
+                compacted = CompletableFuture.supplyAsync(patched::compact);
             }
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Contains non-numeric values.");
         }
-        return filterGames.filter(game -> Filters.filter(game, column, operator, value));
+        return new RefreshResult(added.size(), changed.size(), deleted, unchanged);
     }
 
-    @Override
-    public void reset() {
-        this.currentGames = new LinkedHashSet<>(this.originalGames);
+    /**
+     * Waits for the table being compacted after a refresh, if any, and moves the session to
+     * it.
+     * @return true if the session moved to a compacted table.
+     */
+    synchronized boolean awaitCompaction() {
+        return useCompacted(true);
+    }
+
+    /**
+     * Moves the session to the compacted copy of its table, if there is one. The current
+     * games stay the same, in the same order, under their new rows.
+     * @param wait true to wait for a compaction that is still running, false to leave it.
+     * @return true if the session moved to a compacted table.
+     */
+    private boolean useCompacted(boolean wait) {
+        if (compacted == null || !wait && !compacted.isDone()) {
+            return false;
+        }
+        CompletableFuture<GameTable> done = compacted;
+        GameTable from = compacting;
+        compacted = null;
+        compacting = null;
+        GameTable table = done.join();
+        if (from != data.table()) {
+            return false; // refreshed since, the copy is out of date
+        }
+        int[] newRows = from.compactedRows();
+        int[] current = currentRows();
+        int[] moved = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            moved[i] = newRows[current[i]];
+        }
+        data = data.withTable(table);
+        currentRows = moved;
+        // the rows changed, so the results cached under the old ones are no use
+        version++;
+        if (currentQuery != null) {
+            currentQuery = new QueryKey(version, currentQuery, null, null);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first row of some rows that is not matched yet, with a given name if any.
+     * @param table the table the rows are in.
+     * @param rows rows with the same objectid, in order.
+     * @param kept the rows matched so far.
+     * @param name the name the row must have, or null for any name.
+     * @return the row, or -1 if there is none.
+     */
+    private static int freeRow(GameTable table, List<Integer> rows, boolean[] kept,
+                                String name) {
+        for (int row : rows) {
+            if (!kept[row] && (name == null || table.name(row).equals(name))) {
+                return row;
+            }
+        }
+        return -1;
     }
 }
@@ -0,0 +1,65 @@
+package student;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Identifies the rows a query on the planner produces.
+ *
+ * The rows a filter produces depend on the rows it started from, so a key holds the key of
+ * the query before it, back to the last reset. Two keys are equal when they are the same
+ * chain of queries since a reset on the same version of the collection, which always gives
+ * the same rows in the same order.
+ */
+final class QueryKey {
+    /** version of the collection the query ran on. */
+    private final long version;
+    /** the query the current rows came from, or null for all rows after a reset. */
+    private final QueryKey previous;
+    /** key of the filter plan, or null if the step was not a filter. */
+    private final String filter;
+    /** columns sorted on, or null if the step was not a filter. */
+    private final List<SortKey> order;
+    /** hash of the whole chain. */
+    private final int hash;
+
+    /**
+     * Constructor for a key.
+     *
+     * @param version   version of the collection the query ran on
+     * @param previous  the query the rows came from, or null for all rows
+     * @param filter    key of the filter plan, or null if the step was not a filter
+     * @param order     columns sorted on, or null if the step was not a filter
+     */
+    QueryKey(long version, QueryKey previous, String filter, List<SortKey> order) {
+        this.version = version;
+        this.previous = previous;
+        this.filter = filter;
+        this.order = order;
+        this.hash = Objects.hash(version, previous, filter, order);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof QueryKey)) {
+            return false;
+        }
+        // walk the chains in a loop, they can be long
+        QueryKey a = this;
+        QueryKey b = (QueryKey) obj;
+        while (a != b) {
+            if (a == null || b == null || a.hash != b.hash || a.version != b.version
+                    || !Objects.equals(a.order, b.order) || !Objects.equals(a.filter, b.filter)) {
+                return false;
+            }
+            a = a.previous;
+            b = b.previous;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
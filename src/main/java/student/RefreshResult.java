@@ -0,0 +1,86 @@
+package student;
+
+/**
+ * Summary of a refresh of the planner's games, counted by objectid.
+ */
+public final class RefreshResult {
+    /** games that were not in the planner before. */
+    private final int inserted;
+    /** games whose values changed. */
+    private final int updated;
+    /** games that are no longer in the collection. */
+    private final int deleted;
+    /** games that did not change at all. */
+    private final int unchanged;
+
+    /**
+     * Constructor for the refresh summary.
+     *
+     * @param inserted  games that were added
+     * @param updated   games whose values changed
+     * @param deleted   games that were removed
+     * @param unchanged games that did not change
+     */
+    RefreshResult(int inserted, int updated, int deleted, int unchanged) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.deleted = deleted;
+        this.unchanged = unchanged;
+    }
+
+    /**
+     * Get the number of games that were added.
+     *
+     * @return games added
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Get the number of games whose values changed.
+     *
+     * @return games updated
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Get the number of games that were removed.
+     *
+     * @return games removed
+     */
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Get the number of games that were left untouched.
+     *
+     * @return games unchanged
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Check if the refresh changed anything.
+     *
+     * @return true if any game was added, updated or removed
+     */
+    public boolean hasChanges() {
+        return inserted + updated + deleted > 0;
+    }
+
+    /**
+     * Get a one line summary of the refresh.
+     *
+     * @return summary of the refresh
+     */
+    @Override
+    public String toString() {
+        return String.format("%d inserted, %d updated, %d deleted, %d unchanged", inserted,
+                updated, deleted, unchanged);
+    }
+}
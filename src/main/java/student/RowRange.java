@@ -0,0 +1,65 @@
+package student;
+
+import java.util.Arrays;
+
+/**
+ * A run of rows an index found for a condition: part of an array of rows in the index's own
+ * order.
+ *
+ * An exact range holds the rows that match the condition and no others. A range that is not
+ * exact may hold rows that do not match, so its rows still need to be tested.
+ */
+final class RowRange {
+    /** the rows, in the index's order. */
+    private final int[] rows;
+    /** first position of the range. */
+    private final int from;
+    /** position after the last one of the range. */
+    private final int to;
+    /** true if every row in the range matches the condition. */
+    private final boolean exact;
+
+    /**
+     * Constructor for a range.
+     *
+     * @param rows  the rows, in the index's order, not changed
+     * @param from  first position of the range
+     * @param to    position after the last one of the range
+     * @param exact true if every row in the range matches the condition
+     */
+    RowRange(int[] rows, int from, int to, boolean exact) {
+        this.rows = rows;
+        this.from = from;
+        this.to = to;
+        this.exact = exact;
+    }
+
+    /**
+     * Get the number of rows in the range.
+     *
+     * @return rows in the range
+     */
+    int size() {
+        return to - from;
+    }
+
+    /**
+     * Check if the range holds exactly the rows that match.
+     *
+     * @return true if the rows need no further test for the condition
+     */
+    boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Copies the rows of the range out in row order.
+     *
+     * @return a new array of the rows, ascending
+     */
+    int[] toRows() {
+        int[] copy = Arrays.copyOfRange(rows, from, to);
+        Arrays.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,72 @@
+package student;
+
+/**
+ * One column of a sort order and its direction.
+ *
+ * A list of keys sorts on the first key, then breaks ties with the second, and so on. Games
+ * that tie on every key keep the order they were in. ID is not sortable, so a key on ID
+ * never changes the order.
+ */
+public final class SortKey {
+    /** the column to sort on. */
+    private final GameData column;
+    /** true for smallest value first. */
+    private final boolean ascending;
+
+    /**
+     * Constructor for a sort key.
+     *
+     * @param column    the column to sort on
+     * @param ascending true for smallest value first
+     * @throws IllegalArgumentException if the column is null
+     */
+    public SortKey(GameData column, boolean ascending) {
+        if (column == null) {
+            throw new IllegalArgumentException("sort column can not be null");
+        }
+        this.column = column;
+        this.ascending = ascending;
+    }
+
+    /**
+     * Get the column sorted on.
+     *
+     * @return the column
+     */
+    public GameData getColumn() {
+        return column;
+    }
+
+    /**
+     * Check the direction of the key.
+     *
+     * @return true for smallest value first
+     */
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SortKey)) {
+            return false;
+        }
+        SortKey other = (SortKey) obj;
+        return column == other.column && ascending == other.ascending;
+    }
+
+    @Override
+    public int hashCode() {
+        return column.hashCode() * 2 + (ascending ? 1 : 0);
+    }
+
+    /**
+     * Get the key as it is written in a sort option.
+     *
+     * @return the column name and direction, like "rating desc"
+     */
+    @Override
+    public String toString() {
+        return column.getColumnName() + (ascending ? " asc" : " desc");
+    }
+}
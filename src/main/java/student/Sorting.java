@@ -1,8 +1,29 @@
 package student;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public final class Sorting {
+    /** ranges this small are insertion sorted. */
+    private static final int INSERTION_SORT_SIZE = 16;
+    /** a parallel sort is split into about this many tasks per thread of the pool. */
+    static final int TASKS_PER_THREAD = 4;
+    /** rows in row order are sorted by walking an index if they are 1 / INDEX_WALK_SHARE
+     * of the table or more. */
+    static final int INDEX_WALK_SHARE = 8;
+    /** fewer rows than this are merge sorted, as the radix sort's passes cost more. */
+    static final int RADIX_SORT_SIZE = 64;
+    /** most bits sorted on by one pass of the radix sort. */
+    private static final int RADIX_BITS = 11;
 
     /**
      * Constructor for Sorting.
@@ -20,63 +41,661 @@ public final class Sorting {
      */
     public static Stream<BoardGame> sortOn(Stream<BoardGame> filterGames,
                                            GameData sortOn, boolean ascending) {
+        if (sortOn == GameData.ID) {
+            return filterGames;
+        }
+        List<BoardGame> games = filterGames.collect(Collectors.toList());
+        int[] positions = new int[games.size()];
+        Arrays.setAll(positions, i -> i);
+        if (sortOn == GameData.NAME) {
+            // fold each name once, not on every comparison
+            NameKey[] names = new NameKey[games.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = new NameKey(games.get(i).getName());
+            }
+            IntBinaryOperator order = ascending ? (p1, p2) -> names[p1].compareTo(names[p2])
+                    : (p1, p2) -> names[p2].compareTo(names[p1]);
+            mergeSort(positions, positions.clone(), 0, positions.length, order);
+        } else {
+            long[] keys = new long[games.size()];
+            for (int i = 0; i < keys.length; i++) {
+                long key = sortKey(games.get(i), sortOn);
+                keys[i] = ascending ? key : ~key;
+            }
+            positions = radixSort(positions, keys, null);
+        }
+        return Arrays.stream(positions).mapToObj(games::get);
+    }
+
+    /**
+     * Gets the sort key of a game on a numeric column, see {@link #orderedBits(double)}.
+     * @param game the game.
+     * @param sortOn the column, any numeric column but ID.
+     * @return the key, ordered the same as the column's values.
+     */
+    private static long sortKey(BoardGame game, GameData sortOn) {
         switch (sortOn) {
-            case NAME:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> g1.getName().compareToIgnoreCase(g2.getName()));
-                } else {
-                    return filterGames.sorted((g1, g2) -> g2.getName().compareToIgnoreCase(g1.getName()));
-                }
             case RATING:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> Double.compare(g1.getRating(), g2.getRating()));
-                } else {
-                    return filterGames.sorted((g1, g2) -> Double.compare(g2.getRating(), g1.getRating()));
-                }
+                return orderedBits(game.getRating());
             case DIFFICULTY:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> Double.compare(g1.getDifficulty(), g2.getDifficulty()));
-                } else {
-                    return filterGames.sorted((g1, g2) -> Double.compare(g2.getDifficulty(), g1.getDifficulty()));
-                }
+                return orderedBits(game.getDifficulty());
             case RANK:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> g1.getRank() - g2.getRank());
-                } else {
-                    return filterGames.sorted((g1, g2) -> g2.getRank() - g1.getRank());
-                }
+                return game.getRank();
             case MIN_PLAYERS:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> g1.getMinPlayers() - g2.getMinPlayers());
-                } else {
-                    return filterGames.sorted((g1, g2) -> g2.getMinPlayers() - g1.getMinPlayers());
-                }
+                return game.getMinPlayers();
             case MAX_PLAYERS:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> g1.getMaxPlayers() - g2.getMaxPlayers());
-                } else {
-                    return filterGames.sorted((g1, g2) -> g2.getMaxPlayers() - g1.getMaxPlayers());
-                }
+                return game.getMaxPlayers();
             case MIN_TIME:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> g1.getMinPlayTime() - g2.getMinPlayTime());
-                } else {
-                    return filterGames.sorted((g1, g2) -> g2.getMinPlayTime() - g1.getMinPlayTime());
-                }
+                return game.getMinPlayTime();
             case MAX_TIME:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> g1.getMaxPlayTime() - g2.getMaxPlayTime());
-                } else {
-                    return filterGames.sorted((g1, g2) -> g2.getMaxPlayTime() - g1.getMaxPlayTime());
+                return game.getMaxPlayTime();
+            default:
+                return game.getYearPublished();
+        }
+    }
+
+    /**
+     * Sorts rows of a game table on one or more columns.
+     * @param table the table holding the games.
+     * @param rows the rows to be sorted, not changed.
+     * @param order the columns to sort on, the first one first.
+     * @return a sorted copy of the rows, or the rows themselves if no column is sortable.
+     */
+    static int[] sortRows(GameTable table, int[] rows, List<SortKey> order) {
+        return sortRows(table, rows, order, null);
+    }
+
+    /**
+     * Sorts rows of a game table on one or more columns, on a fork/join pool.
+     *
+     * The sort is stable, so rows that tie on every column keep the order they came in, the
+     * same as sorting a stream of the games with a chain of comparators.
+     *
+     * Values are not compared at all. For a single numeric column, if the rows are in row
+     * order, as the first filter gives them, and are a good share of the table, the column's
+     * sorted index is walked and the rows that are there are kept. Otherwise each row gets
+     * one long key, the ranks of its values (see {@link ColumnIndex#ranks()}) packed side by
+     * side with the first column highest, and the rows are radix sorted by it. Both take
+     * linear time. Only if the ranks do not fit in a long, or there are very few rows, are
+     * the rows merge sorted, comparing the ranks column by column.
+     *
+     * With a pool, the keys are packed and each radix pass is run on a few slices of the rows
+     * per thread of the pool, and the merge sort sorts its halves as separate tasks until
+     * they are a few per thread. The rows end up exactly where the sequential sort puts them,
+     * whatever the pool. The index walk is a single pass and always stays on the caller.
+     * @param table the table holding the games.
+     * @param rows the rows to be sorted, not changed.
+     * @param order the columns to sort on, the first one first.
+     * @param pool the pool to sort on, or null to sort on the calling thread.
+     * @return a sorted copy of the rows, or the rows themselves if no column is sortable.
+     */
+    static int[] sortRows(GameTable table, int[] rows, List<SortKey> order, ForkJoinPool pool) {
+        List<SortKey> keys = sortable(order);
+        if (keys.isEmpty()) {
+            return rows;
+        }
+        ColumnIndex index = table.index(keys.get(0).getColumn());
+        if (keys.size() == 1 && index != null && rows.length >= table.size() / INDEX_WALK_SHARE
+                && inRowOrder(rows)) {
+            return index.sort(rows, keys.get(0).isAscending());
+        }
+        int bits = 0;
+        for (SortKey key : keys) {
+            bits += rankBits(table, key.getColumn());
+        }
+        if (bits < Long.SIZE && rows.length >= RADIX_SORT_SIZE) {
+            return radixSort(rows.clone(), packedRanks(table, rows, keys, pool), pool);
+        }
+        IntBinaryOperator compare = rankComparator(table, keys);
+        int[] sorted = rows.clone();
+        if (pool == null) {
+            mergeSort(sorted, rows.clone(), 0, sorted.length, compare);
+        } else {
+            int split = Math.max(INSERTION_SORT_SIZE,
+                    rows.length / (pool.getParallelism() * TASKS_PER_THREAD));
+            pool.invoke(new MergeSortTask(sorted, rows.clone(), 0, sorted.length, compare,
+                    split));
+        }
+        return sorted;
+    }
+
+    /**
+     * Check if rows sorted on some keys are also in the order of other keys. They are when
+     * the other keys start the keys the rows were sorted on, leaving out the keys that do not
+     * change the order, as a stable sort on them would not move any row.
+     * @param sortedOn the keys the rows were sorted on, empty if they are in no known order.
+     * @param order the keys to check.
+     * @return true if sorting the rows on order would leave them as they are.
+     */
+    static boolean isSortedBy(List<SortKey> sortedOn, List<SortKey> order) {
+        List<SortKey> done = sortable(sortedOn);
+        List<SortKey> keys = sortable(order);
+        return keys.size() <= done.size() && done.subList(0, keys.size()).equals(keys);
+    }
+
+    /**
+     * Drops the keys that do not change the order: keys on ID, and keys on a column an
+     * earlier key already sorts on.
+     * @param order the sort keys.
+     * @return the keys that matter, in the same order.
+     */
+    private static List<SortKey> sortable(List<SortKey> order) {
+        List<SortKey> keys = new ArrayList<>(order.size());
+        Set<GameData> columns = EnumSet.of(GameData.ID);
+        for (SortKey key : order) {
+            if (columns.add(key.getColumn())) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Check if rows are in increasing row order.
+     * @param rows the rows.
+     * @return true if every row is after the one before it.
+     */
+    private static boolean inRowOrder(int[] rows) {
+        for (int i = 1; i < rows.length; i++) {
+            if (rows[i] <= rows[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the rank of each row's value in a column, names ranked in compareToIgnoreCase order.
+     * @param table the table holding the games.
+     * @param column the column, not ID.
+     * @return the ranks by row.
+     */
+    private static int[] ranks(GameTable table, GameData column) {
+        return column == GameData.NAME ? table.nameIndex().sortRanks()
+                : table.index(column).ranks();
+    }
+
+    /**
+     * Gets the number of bits the ranks of a column need.
+     * @param table the table holding the games.
+     * @param column the column, not ID.
+     * @return the bits needed for the largest rank.
+     */
+    private static int rankBits(GameTable table, GameData column) {
+        int distinct = column == GameData.NAME ? table.nameIndex().distinct()
+                : table.index(column).distinct();
+        return Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(distinct - 1, 0));
+    }
+
+    /**
+     * Packs the ranks of rows on several columns into one key per row. Each column takes
+     * just the bits its ranks need, with the first column in the highest bits, and the ranks
+     * of a descending column flipped, so the keys sort in the order of the whole sort.
+     * @param table the table holding the games.
+     * @param rows the rows.
+     * @param keys the sortable keys, their bits adding up to less than 64.
+     * @param pool the pool to pack slices of the rows on, or null to pack them on the caller.
+     * @return the key of each row, in the same order as the rows.
+     */
+    private static long[] packedRanks(GameTable table, int[] rows, List<SortKey> keys,
+            ForkJoinPool pool) {
+        int[][] ranks = new int[keys.size()][];
+        int[] bits = new int[keys.size()];
+        int[] flips = new int[keys.size()];
+        for (int k = 0; k < ranks.length; k++) {
+            GameData column = keys.get(k).getColumn();
+            ranks[k] = ranks(table, column);
+            bits[k] = rankBits(table, column);
+            flips[k] = keys.get(k).isAscending() ? 0 : (int) ((1L << bits[k]) - 1);
+        }
+        long[] packed = new long[rows.length];
+        int slices = slices(pool, rows.length);
+        forEachSlice(pool, slices, slice -> {
+            int to = sliceStart(rows.length, slices, slice + 1);
+            for (int i = sliceStart(rows.length, slices, slice); i < to; i++) {
+                long key = 0;
+                for (int k = 0; k < ranks.length; k++) {
+                    key = key << bits[k] | (ranks[k][rows[i]] ^ flips[k]);
+                }
+                packed[i] = key;
+            }
+        });
+        return packed;
+    }
+
+    /**
+     * Turns a double into a long that sorts the same way with Long.compare as the double
+     * does with Double.compare.
+     *
+     * Positive doubles already sort by their bits. Negative ones sort backwards, so all the
+     * bits but the sign are flipped. -0.0 comes just before 0.0, and every NaN is the same
+     * value above positive infinity.
+     * @param value the value.
+     * @return the key.
+     */
+    static long orderedBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ (bits >> 63 & Long.MAX_VALUE);
+    }
+
+    /**
+     * Stable LSD radix sort of items by a key.
+     *
+     * The keys are taken as offsets from the smallest one, so only the bits that differ
+     * between keys are sorted on, RADIX_BITS at a time from the lowest. A column of a few
+     * small values, like player counts, takes a single counting pass.
+     *
+     * With a pool, the items are cut into slices and each pass counts the digits of every
+     * slice, then moves the items of every slice, as separate tasks. The items with one digit
+     * go out slice by slice, in the order they came in, so the sort stays stable.
+     * @param items the items to sort, sorted in place.
+     * @param keys the key of each item, changed by the sort.
+     * @param pool the pool to run the passes on, or null to run them on the calling thread.
+     * @return the sorted items, which is either items or a new array.
+     */
+    private static int[] radixSort(int[] items, long[] keys, ForkJoinPool pool) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long key : keys) {
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(max - min);
+        if (items.length < 2 || bits == 0) {
+            return items;
+        }
+        int passes = (bits + RADIX_BITS - 1) / RADIX_BITS;
+        int width = (bits + passes - 1) / passes;
+        int mask = (1 << width) - 1;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] -= min;
+        }
+        int size = items.length;
+        int slices = slices(pool, size);
+        int[][] starts = new int[slices][mask + 1];
+        int[] toItems = new int[size];
+        long[] toKeys = new long[size];
+        for (int shift = 0; shift < bits; shift += width) {
+            int at = shift;
+            int[] fromItems = items;
+            long[] fromKeys = keys;
+            int[] intoItems = toItems;
+            long[] intoKeys = toKeys;
+            forEachSlice(pool, slices, slice -> {
+                int[] counts = starts[slice];
+                Arrays.fill(counts, 0);
+                int to = sliceStart(size, slices, slice + 1);
+                for (int i = sliceStart(size, slices, slice); i < to; i++) {
+                    counts[(int) (fromKeys[i] >>> at) & mask]++;
+                }
+            });
+            // each digit starts with the first slice's items, then the next slice's
+            int next = 0;
+            for (int digit = 0; digit <= mask; digit++) {
+                for (int[] counts : starts) {
+                    int count = counts[digit];
+                    counts[digit] = next;
+                    next += count;
                 }
-            case YEAR:
-                if (ascending) {
-                    return filterGames.sorted((g1, g2) -> g1.getYearPublished() - g2.getYearPublished());
+            }
+            forEachSlice(pool, slices, slice -> {
+                int[] counts = starts[slice];
+                int to = sliceStart(size, slices, slice + 1);
+                for (int i = sliceStart(size, slices, slice); i < to; i++) {
+                    int into = counts[(int) (fromKeys[i] >>> at) & mask]++;
+                    intoItems[into] = fromItems[i];
+                    intoKeys[into] = fromKeys[i];
+                }
+            });
+            items = intoItems;
+            toItems = fromItems;
+            keys = intoKeys;
+            toKeys = fromKeys;
+        }
+        return items;
+    }
+
+    /**
+     * Picks how many slices to cut some rows into: one without a pool, otherwise a few per
+     * thread of the pool, but none smaller than RADIX_SORT_SIZE rows.
+     * @param pool the pool, or null.
+     * @param size the number of rows.
+     * @return the number of slices, at least 1.
+     */
+    private static int slices(ForkJoinPool pool, int size) {
+        if (pool == null) {
+            return 1;
+        }
+        return Math.max(1, Math.min(pool.getParallelism() * TASKS_PER_THREAD,
+                size / RADIX_SORT_SIZE));
+    }
+
+    /**
+     * Gets the index a slice starts at, slices being as even as they can be.
+     * @param size the number of rows.
+     * @param slices the number of slices.
+     * @param slice the slice, or slices for the end of the last one.
+     * @return the index of the first row of the slice.
+     */
+    private static int sliceStart(int size, int slices, int slice) {
+        return (int) ((long) size * slice / slices);
+    }
+
+    /**
+     * Runs some work on every slice, as separate tasks on a pool, and waits for all of them.
+     * @param pool the pool, or null to run the slices one after another on the caller.
+     * @param slices the number of slices.
+     * @param work the work on one slice, given its number.
+     */
+    private static void forEachSlice(ForkJoinPool pool, int slices, IntConsumer work) {
+        if (pool == null || slices == 1) {
+            for (int slice = 0; slice < slices; slice++) {
+                work.accept(slice);
+            }
+        } else {
+            pool.invoke(new SliceTask(0, slices, work));
+        }
+    }
+
+    /**
+     * Picks the first rows of a sort, without sorting the rest.
+     *
+     * The result is exactly the first count rows {@link #sortRows(GameTable, int[], List)}
+     * would give, ties included. A heap keeps the best count rows seen so far, with
+     * the worst on top, so each row costs O(log count) instead of the O(log n) of a full sort.
+     * @param table the table holding the games.
+     * @param rows the rows to pick from, not changed.
+     * @param order the columns to sort on, the first one first.
+     * @param count the number of rows wanted.
+     * @return the first count rows in sorted order, or all of them if there are fewer.
+     */
+    static int[] selectRows(GameTable table, int[] rows, List<SortKey> order, int count) {
+        int size = Math.min(count, rows.length);
+        List<SortKey> keys = sortable(order);
+        if (keys.isEmpty()) {
+            return Arrays.copyOf(rows, size);
+        }
+        IntBinaryOperator compare = rankComparator(table, keys);
+        // heap of positions in rows, ties go to the earlier position as the sort is stable
+        IntBinaryOperator before = (p1, p2) -> {
+            int result = compare.applyAsInt(rows[p1], rows[p2]);
+            return result != 0 ? result : Integer.compare(p1, p2);
+        };
+        int[] heap = new int[size];
+        for (int position = 0; position < rows.length; position++) {
+            if (position < size) {
+                heap[position] = position;
+                siftUp(heap, position, before);
+            } else if (size > 0 && before.applyAsInt(position, heap[0]) < 0) {
+                heap[0] = position;
+                siftDown(heap, size, before);
+            }
+        }
+        // take the worst off the top until the heap is empty, filling from the back
+        int[] selected = new int[size];
+        for (int last = size - 1; last >= 0; last--) {
+            selected[last] = rows[heap[0]];
+            heap[0] = heap[last];
+            siftDown(heap, last, before);
+        }
+        return selected;
+    }
+
+    /**
+     * Moves the last entry of a max heap up to its place.
+     * @param heap the heap.
+     * @param at index of the entry that was just added.
+     * @param before the order of the entries, the largest is on top.
+     */
+    private static void siftUp(int[] heap, int at, IntBinaryOperator before) {
+        int entry = heap[at];
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (before.applyAsInt(heap[parent], entry) >= 0) {
+                break;
+            }
+            heap[at] = heap[parent];
+            at = parent;
+        }
+        heap[at] = entry;
+    }
+
+    /**
+     * Moves the top entry of a max heap down to its place.
+     * @param heap the heap.
+     * @param size number of entries in the heap.
+     * @param before the order of the entries, the largest is on top.
+     */
+    private static void siftDown(int[] heap, int size, IntBinaryOperator before) {
+        if (size == 0) {
+            return;
+        }
+        int entry = heap[0];
+        int at = 0;
+        while (2 * at + 1 < size) {
+            int child = 2 * at + 1;
+            if (child + 1 < size && before.applyAsInt(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (before.applyAsInt(heap[child], entry) <= 0) {
+                break;
+            }
+            heap[at] = heap[child];
+            at = child;
+        }
+        heap[at] = entry;
+    }
+
+    /**
+     * Patches a sorted list of rows: drops some rows and merges in a few others, without
+     * sorting the list again.
+     *
+     * The new rows are merge sorted on their own, then each one is placed with a binary
+     * search of the rows kept, so the list costs two copies and the new rows O(log n)
+     * comparisons each. The order has to be total, rows that tie on value being ordered by
+     * row.
+     * @param sorted the rows in order, not changed.
+     * @param drop the rows to drop, which may no longer compare the way they are sorted.
+     * @param fresh the rows to merge in, in any order, not changed.
+     * @param order the comparator of two rows the list is sorted by.
+     * @return a new list of the rows kept and the fresh rows, in order.
+     */
+    static int[] patchRows(int[] sorted, long[] drop, int[] fresh, IntBinaryOperator order) {
+        int[] kept = new int[sorted.length];
+        int size = 0;
+        for (int row : sorted) {
+            if (!BitmapIndex.contains(drop, row)) {
+                kept[size++] = row;
+            }
+        }
+        int[] added = fresh.clone();
+        mergeSort(added, fresh.clone(), 0, added.length, order);
+        int[] patched = new int[size + added.length];
+        int from = 0;
+        for (int i = 0; i < added.length; i++) {
+            int low = from;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (order.applyAsInt(kept[mid], added[i]) < 0) {
+                    low = mid + 1;
                 } else {
-                    return filterGames.sorted((g1, g2) -> g2.getYearPublished() - g1.getYearPublished());
+                    high = mid;
                 }
-            default:
-                return filterGames;
+            }
+            System.arraycopy(kept, from, patched, from + i, low - from);
+            patched[low + i] = added[i];
+            from = low;
+        }
+        System.arraycopy(kept, from, patched, from + added.length, size - from);
+        return patched;
+    }
+
+    /**
+     * Builds a comparator of two rows on several columns, comparing the ranks of their
+     * values column by column.
+     * @param table the table holding the games.
+     * @param keys the sortable keys.
+     * @return a comparator of row indexes.
+     */
+    private static IntBinaryOperator rankComparator(GameTable table, List<SortKey> keys) {
+        int[][] ranks = new int[keys.size()][];
+        boolean[] ascending = new boolean[keys.size()];
+        for (int k = 0; k < ranks.length; k++) {
+            ranks[k] = ranks(table, keys.get(k).getColumn());
+            ascending[k] = keys.get(k).isAscending();
+        }
+        return (r1, r2) -> {
+            for (int k = 0; k < ranks.length; k++) {
+                int compare = Integer.compare(ranks[k][r1], ranks[k][r2]);
+                if (compare != 0) {
+                    return ascending[k] ? compare : -compare;
+                }
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * Stable merge sort of part of an int array.
+     * @param rows the rows to sort, sorted in place.
+     * @param work a copy of the rows used as scratch space.
+     * @param from first index to sort.
+     * @param to index after the last one to sort.
+     * @param order the comparator of two rows.
+     */
+    private static void mergeSort(int[] rows, int[] work, int from, int to,
+                                  IntBinaryOperator order) {
+        if (to - from <= INSERTION_SORT_SIZE) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= from && order.applyAsInt(rows[j], row) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        // sort each half of the work array into the rows array, then merge back
+        mergeSort(work, rows, from, mid, order);
+        mergeSort(work, rows, mid, to, order);
+        merge(rows, work, from, mid, to, order);
+    }
+
+    /**
+     * Merges two sorted neighbouring ranges, taking from the left range on ties.
+     * @param rows where the merged rows go.
+     * @param work holds the two sorted ranges.
+     * @param from first index of the left range.
+     * @param mid first index of the right range.
+     * @param to index after the right range.
+     * @param order the comparator of two rows.
+     */
+    private static void merge(int[] rows, int[] work, int from, int mid, int to,
+                              IntBinaryOperator order) {
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && order.applyAsInt(work[left], work[right]) <= 0)) {
+                rows[i] = work[left++];
+            } else {
+                rows[i] = work[right++];
+            }
+        }
+    }
+
+    /**
+     * Fork/join task for part of a parallel merge sort.
+     *
+     * Works like {@link #mergeSort(int[], int[], int, int, IntBinaryOperator)}, but sorts
+     * the two halves as separate tasks while the range is bigger than the split size.
+     */
+    private static final class MergeSortTask extends RecursiveAction {
+        /** serial version, tasks are serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** the rows to sort, sorted in place. */
+        private final int[] rows;
+        /** a copy of the rows used as scratch space. */
+        private final int[] work;
+        /** first index to sort. */
+        private final int from;
+        /** index after the last one to sort. */
+        private final int to;
+        /** the comparator of two rows. */
+        private final transient IntBinaryOperator order;
+        /** ranges this small are sorted by a single thread. */
+        private final int split;
+
+        /**
+         * Builds a task for part of the rows.
+         * @param rows the rows to sort, sorted in place.
+         * @param work a copy of the rows used as scratch space.
+         * @param from first index to sort.
+         * @param to index after the last one to sort.
+         * @param order the comparator of two rows.
+         * @param split ranges this small are sorted by a single thread.
+         */
+        MergeSortTask(int[] rows, int[] work, int from, int to, IntBinaryOperator order,
+                      int split) {
+            this.rows = rows;
+            this.work = work;
+            this.from = from;
+            this.to = to;
+            this.order = order;
+            this.split = split;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= split) {
+                mergeSort(rows, work, from, to, order);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new MergeSortTask(work, rows, from, mid, order, split),
+                    new MergeSortTask(work, rows, mid, to, order, split));
+            merge(rows, work, from, mid, to, order);
+        }
+    }
+
+    /**
+     * Fork/join task running some work on a range of slices, one task per slice.
+     */
+    private static final class SliceTask extends RecursiveAction {
+        /** serial version, tasks are serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** first slice to run. */
+        private final int from;
+        /** slice after the last one to run. */
+        private final int to;
+        /** the work on one slice. */
+        private final transient IntConsumer work;
+
+        /**
+         * Builds a task for a range of slices.
+         * @param from first slice to run.
+         * @param to slice after the last one to run.
+         * @param work the work on one slice.
+         */
+        SliceTask(int from, int to, IntConsumer work) {
+            this.from = from;
+            this.to = to;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                work.accept(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SliceTask(from, mid, work), new SliceTask(mid, to, work));
         }
     }
 }
@@ -0,0 +1,279 @@
+package student;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from every three character sequence (trigram) of the game names to the rows
+ * whose name holds it, for name ~= filters.
+ *
+ * A name can only contain a value if it holds every trigram of the value, so intersecting
+ * the rows of those trigrams gives a short list of candidates. The candidates still need to
+ * be checked, as the trigrams may be in the name in another order. Values shorter than three
+ * characters have no trigrams and are not answered by the index.
+ *
+ * The names are indexed as the name filters compare them, without spaces and in lower case.
+ * Rows a refresh deleted from the table are in no list.
+ */
+final class TrigramIndex {
+    /** characters in a trigram. */
+    private static final int GRAM = 3;
+
+    /** open addressing table of the distinct trigrams, 0 for an empty slot. */
+    private final long[] grams;
+    /** the id of the trigram in the same slot of grams. */
+    private final int[] gramIds;
+    /** the rows of trigram id are postings[starts[id]] up to postings[starts[id + 1]]. */
+    private final int[] starts;
+    /** the rows of each trigram, ascending. */
+    private final int[] postings;
+
+    /**
+     * Constructor for the index.
+     *
+     * @param grams    the trigram table
+     * @param gramIds  the ids of the trigrams in the table
+     * @param starts   where the rows of each trigram start
+     * @param postings the rows of each trigram
+     */
+    private TrigramIndex(long[] grams, int[] gramIds, int[] starts, int[] postings) {
+        this.grams = grams;
+        this.gramIds = gramIds;
+        this.starts = starts;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index of the names.
+     *
+     * @param names the names indexed by row, as they will be compared
+     * @return the index
+     */
+    static TrigramIndex of(String[] names) {
+        int total = 0;
+        for (String name : names) {
+            total += Math.max(0, name.length() - GRAM + 1);
+        }
+        // give every distinct trigram an id, and count the rows it is in
+        long[] grams = new long[1 << 10];
+        int[] gramIds = new int[grams.length];
+        int[] ids = new int[total];
+        int[] lastRow = new int[grams.length / 2];
+        int[] counts = new int[grams.length / 2 + 1];
+        int distinct = 0;
+        int next = 0;
+        for (int row = 0; row < names.length; row++) {
+            for (int i = 0; i + GRAM <= names[row].length(); i++) {
+                long gram = gram(names[row], i);
+                int slot = slot(grams, gram);
+                if (grams[slot] == 0) {
+                    if (distinct == lastRow.length) {
+                        // keep the table at most half full
+                        long[] oldGrams = grams;
+                        int[] oldIds = gramIds;
+                        grams = new long[oldGrams.length * 2];
+                        gramIds = new int[grams.length];
+                        for (int old = 0; old < oldGrams.length; old++) {
+                            if (oldGrams[old] != 0) {
+                                int moved = slot(grams, oldGrams[old]);
+                                grams[moved] = oldGrams[old];
+                                gramIds[moved] = oldIds[old];
+                            }
+                        }
+                        lastRow = Arrays.copyOf(lastRow, grams.length / 2);
+                        counts = Arrays.copyOf(counts, grams.length / 2 + 1);
+                        slot = slot(grams, gram);
+                    }
+                    grams[slot] = gram;
+                    gramIds[slot] = distinct;
+                    lastRow[distinct++] = -1;
+                }
+                int id = gramIds[slot];
+                if (lastRow[id] == row) {
+                    id = -1; // trigram seen earlier in this name
+                } else {
+                    lastRow[id] = row;
+                    counts[id + 1]++;
+                }
+                ids[next++] = id;
+            }
+        }
+
+        // fill the rows in row order, so each list is sorted
+        for (int id = 0; id < distinct; id++) {
+            counts[id + 1] += counts[id];
+        }
+        int[] starts = Arrays.copyOf(counts, distinct + 1);
+        int[] postings = new int[counts[distinct]];
+        next = 0;
+        for (int row = 0; row < names.length; row++) {
+            for (int i = 0; i + GRAM <= names[row].length(); i++) {
+                int id = ids[next++];
+                if (id >= 0) {
+                    postings[counts[id]++] = row;
+                }
+            }
+        }
+        return new TrigramIndex(grams, gramIds, starts, postings);
+    }
+
+    /**
+     * Builds the index of a patched table from the index of the table it was patched from.
+     *
+     * Only the names of the fresh rows are split into trigrams. Every list of rows is copied
+     * without the removed rows, with the fresh rows holding its trigram merged in.
+     *
+     * @param names   the names of the patched table by row, as they will be compared
+     * @param removed the rows of the old table that were deleted or replaced
+     * @param fresh   the rows of the patched table that were replaced or added, ascending
+     * @return the index of the patched table
+     */
+    TrigramIndex patch(String[] names, long[] removed, int[] fresh) {
+        int oldDistinct = starts.length - 1;
+        int distinct = oldDistinct;
+        int total = 0;
+        for (int row : fresh) {
+            total += Math.max(0, names[row].length() - GRAM + 1);
+        }
+        // room for every fresh trigram being new, keeping the table at most half full
+        int length = grams.length;
+        while (distinct + total > length / 2) {
+            length *= 2;
+        }
+        long[] newGrams = new long[length];
+        int[] newIds = new int[length];
+        for (int old = 0; old < grams.length; old++) {
+            if (grams[old] != 0) {
+                int slot = slot(newGrams, grams[old]);
+                newGrams[slot] = grams[old];
+                newIds[slot] = gramIds[old];
+            }
+        }
+
+        // the trigram id and row of every trigram of the fresh names, sorted by id then row
+        long[] pairs = new long[total];
+        int count = 0;
+        for (int row : fresh) {
+            for (int i = 0; i + GRAM <= names[row].length(); i++) {
+                long gram = gram(names[row], i);
+                int slot = slot(newGrams, gram);
+                if (newGrams[slot] == 0) {
+                    newGrams[slot] = gram;
+                    newIds[slot] = distinct++;
+                }
+                pairs[count++] = (long) newIds[slot] << 32 | row;
+            }
+        }
+        Arrays.sort(pairs);
+
+        int[] newStarts = new int[distinct + 1];
+        int[] newPostings = new int[postings.length + count];
+        int size = 0;
+        int next = 0;
+        for (int id = 0; id < distinct; id++) {
+            newStarts[id] = size;
+            int from = id < oldDistinct ? starts[id] : 0;
+            int to = id < oldDistinct ? starts[id + 1] : 0;
+            int last = -1;
+            while (from < to || next < count && (int) (pairs[next] >>> 32) == id) {
+                int row;
+                if (from < to && (next == count || (int) (pairs[next] >>> 32) != id
+                        || postings[from] < (int) pairs[next])) {
+                    row = postings[from++];
+                    if (BitmapIndex.contains(removed, row)) {
+                        continue;
+                    }
+                } else {
+                    row = (int) pairs[next++];
+                }
+                if (row != last) { // a trigram twice in a fresh name
+                    newPostings[size++] = row;
+                    last = row;
+                }
+            }
+        }
+        newStarts[distinct] = size;
+        return new TrigramIndex(newGrams, newIds, newStarts, Arrays.copyOf(newPostings, size));
+    }
+
+    /**
+     * Finds the rows whose name holds every trigram of a value.
+     *
+     * @param value the value, as it will be compared
+     * @return the candidate rows ascending, or null if the value is too short to use the index
+     */
+    int[] candidates(String value) {
+        if (value.length() < GRAM) {
+            return null;
+        }
+        // the posting lists of the value's trigrams, shortest first
+        int count = value.length() - GRAM + 1;
+        long[] lists = new long[count];
+        for (int i = 0; i < count; i++) {
+            int slot = slot(grams, gram(value, i));
+            if (grams[slot] == 0) {
+                return new int[0]; // no name holds this trigram
+            }
+            int id = gramIds[slot];
+            lists[i] = (long) (starts[id + 1] - starts[id]) << 32 | id;
+        }
+        Arrays.sort(lists);
+
+        int first = (int) lists[0];
+        int[] rows = Arrays.copyOfRange(postings, starts[first], starts[first + 1]);
+        int size = rows.length;
+        for (int i = 1; i < count && size > 0; i++) {
+            int id = (int) lists[i];
+            if (id == (int) lists[i - 1]) {
+                continue; // the same trigram twice in the value
+            }
+            int from = starts[id];
+            int to = starts[id + 1];
+            int kept = 0;
+            for (int j = 0; j < size && from < to; j++) {
+                int at = Arrays.binarySearch(postings, from, to, rows[j]);
+                if (at >= 0) {
+                    rows[kept++] = rows[j];
+                    from = at + 1;
+                } else {
+                    from = -at - 1;
+                }
+            }
+            size = kept;
+        }
+        return Arrays.copyOf(rows, size);
+    }
+
+    /**
+     * Finds the slot of a trigram in the table: the slot holding it, or the empty slot where
+     * it belongs.
+     *
+     * The slot starts from the top log2(length) bits of the trigram times 2^64 over the golden
+     * ratio, as the top bits of the product mix in every bit of the trigram, for any size.
+     *
+     * @param grams the trigram table
+     * @param gram  the trigram
+     * @return the slot
+     */
+    private static int slot(long[] grams, long gram) {
+        int mask = grams.length - 1;
+        // 64 - log2(length), the length being a power of two; a shift of 64 is a shift of 0
+        int shift = Integer.numberOfLeadingZeros(mask) + Integer.SIZE;
+        int slot = (int) (gram * 0x9E3779B97F4A7C15L >>> shift) & mask;
+        while (grams[slot] != 0 && grams[slot] != gram) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Packs the trigram starting at a position of a string into a long.
+     *
+     * @param text the string
+     * @param at   where the trigram starts
+     * @return the three characters, packed with a marker bit so it is never 0
+     */
+    private static long gram(String text, int at) {
+        return 1L << 48 | (long) text.charAt(at) << 32 | (long) text.charAt(at + 1) << 16
+                | text.charAt(at + 2);
+    }
+}
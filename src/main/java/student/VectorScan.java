@@ -0,0 +1,110 @@
+package student;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Tests a condition against a whole numeric column with SIMD compares, a vector of rows at
+ * a time, giving a bitmap of the matching rows.
+ *
+ * The compares are in {@code VectorLanes}, on the incubating jdk.incubator.vector module. It
+ * is opt in: VectorLanes is only compiled when the build is run with -Pvector, and the module
+ * is only there when the JVM is started with {@code --add-modules jdk.incubator.vector}.
+ * VectorLanes is looked up by reflection when both are there, so the rest of the code builds
+ * and runs without the module. Check {@link #isAvailable()} before calling
+ * {@link #matching(GameTable, FilterCondition)}, which fails without them.
+ *
+ * The answers are the same as the predicates of {@link FilterCondition#bind(GameTable)}: the
+ * lanes compare with the Java operators, and != on doubles is taken as the negation of ==, so
+ * NaN is != everything.
+ */
+final class VectorScan {
+    /**
+     * fewest rows a table needs for vector scans to be used. The vector code is far slower
+     * than a plain loop until the JIT compiles it, and a scan of a smaller table is over
+     * before that happens.
+     */
+    static final int MIN_ROWS = 1 << 20;
+    /** name of the module holding the Vector API. */
+    private static final String MODULE = "jdk.incubator.vector";
+    /** name of the class holding the compare loops. */
+    private static final String LANES = "student.VectorLanes";
+    /** VectorLanes.matching(int[], Operations, int), or null if it can not be used. */
+    private static final MethodHandle INT_SCAN = lanes(int[].class, int.class);
+    /** VectorLanes.matching(double[], Operations, double), or null if it can not be used. */
+    private static final MethodHandle DOUBLE_SCAN = lanes(double[].class, double.class);
+    /** true if the Vector API module was loaded and VectorLanes is there, checked once. */
+    private static final boolean AVAILABLE = INT_SCAN != null && DOUBLE_SCAN != null;
+
+    /** private constructor as static class. */
+    private VectorScan() {
+    }
+
+    /**
+     * Check if the Vector API can be used.
+     *
+     * @return true if VectorLanes was built and the JVM was started with the
+     *         jdk.incubator.vector module
+     */
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Check if vector scans should be used for a table.
+     *
+     * @param table the table
+     * @return true if the Vector API can be used and the table has at least MIN_ROWS rows
+     */
+    static boolean isUsedFor(GameTable table) {
+        return AVAILABLE && table.size() >= MIN_ROWS;
+    }
+
+    /**
+     * Gets the rows of a table that match a condition on a numeric column.
+     *
+     * @param table     the table
+     * @param condition the condition, on any numeric column but ID
+     * @return a new bitmap of the matching rows, deleted rows left out, or null if the
+     *         operation is not a comparison
+     */
+    static long[] matching(GameTable table, FilterCondition condition) {
+        if (condition.getOperation() == Operations.CONTAINS) {
+            return null;
+        }
+        int[] ints = table.intColumn(condition.getColumn());
+        try {
+            long[] bits = ints != null
+                    ? (long[]) INT_SCAN.invokeExact(ints, condition.getOperation(),
+                            condition.getIntValue())
+                    : (long[]) DOUBLE_SCAN.invokeExact(table.doubleColumn(condition.getColumn()),
+                            condition.getOperation(), condition.getDoubleValue());
+            return BitmapIndex.andNot(bits, table.deleted());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // the loops throw no checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Looks up one of the compare loops of VectorLanes.
+     *
+     * @param column the type of the column
+     * @param value  the type of the value compared with
+     * @return the loop, or null if the module is not loaded or VectorLanes was not built
+     */
+    private static MethodHandle lanes(Class<?> column, Class<?> value) {
+        if (ModuleLayer.boot().findModule(MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName(LANES), "matching",
+                    MethodType.methodType(long[].class, column, Operations.class, value));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -3,10 +3,19 @@ import org.junit.jupiter.api.Test;
 import student.BoardGame;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import student.GameDataset;
 import student.Planner;
+import student.RefreshResult;
+import student.SortKey;
+import student.Sorting;
 import student.IPlanner;
 import student.GameData;
 
@@ -203,6 +212,344 @@ public class TestPlanner {
         assertEquals("golang", filtered9.get(0).getName());
     }
 
+    @Test
+    public void testFilterInvalidConditions() {
+        IPlanner planner = new Planner(games);
+        // a single invalid condition leaves the games as they are, unsorted
+        List<BoardGame> unchanged = planner.filter("rating > 7.5", GameData.RATING).toList();
+        assertEquals(8, unchanged.size());
+        assertEquals("17 days", unchanged.get(0).getName());
+
+        // conditions before the first invalid one still apply
+        List<BoardGame> prefix = planner.filter("minplayers >= 2, bogus > 3, maxplayers < 5").toList();
+        assertEquals(7, prefix.size());
+        assertEquals("Chess", prefix.get(0).getName());
+
+        // names are compared without spaces
+        planner.reset();
+        List<BoardGame> fish = planner.filter("name == gofish").toList();
+        assertEquals(1, fish.size());
+        assertEquals("Go Fish", fish.get(0).getName());
+    }
+
+    @Test
+    public void testFilterNameContains() {
+        IPlanner planner = new Planner(games);
+        List<BoardGame> golang = planner.filter("name ~= OLA").toList();
+        assertEquals(1, golang.size());
+        assertEquals("golang", golang.get(0).getName());
+        planner.reset();
+        // spaces in names are ignored, so this spans two words
+        assertEquals("Go Fish", planner.filter("name~=gofi").toList().get(0).getName());
+        planner.reset();
+        assertEquals(0, planner.filter("name~=fishgo").count());
+    }
+
+    @Test
+    public void testFilterNameRange() {
+        IPlanner planner = new Planner(games);
+        List<BoardGame> before = planner.filter("name < go fish").toList();
+        assertEquals(3, before.size());
+        assertEquals("Go", before.get(2).getName());
+        planner.reset();
+        assertEquals(5, planner.filter("name >= GOFISH").count());
+    }
+
+    @Test
+    public void testFilterConditionOrder() {
+        IPlanner planner = new Planner(games);
+        List<BoardGame> written = planner.filter("name ~= go, rating > 8, minplayers >= 2",
+                GameData.NAME).toList();
+        assertEquals(List.of("golang", "GoRami"),
+                written.stream().map(BoardGame::getName).toList());
+        planner.reset();
+        assertEquals(written, planner.filter("minplayers >= 2, rating > 8, name ~= go",
+                GameData.NAME).toList());
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        Planner sequential = new Planner(games);
+        sequential.setParallelism(null, 0);
+        Planner parallel = new Planner(games);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallel.setParallelism(pool, 1);
+        try {
+            for (String filter : List.of("", "minplayers >= 2", "name ~= go, rating > 7",
+                    "maxplayers < 10")) {
+                for (GameData sortOn : List.of(GameData.NAME, GameData.MIN_PLAYERS,
+                        GameData.MAX_TIME)) {
+                    sequential.reset();
+                    parallel.reset();
+                    assertEquals(sequential.filter(filter, sortOn, false).toList(),
+                            parallel.filter(filter, sortOn, false).toList());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSortDescendingKeepsTies() {
+        Planner planner = new Planner(games);
+        assertEquals(List.of("Tucano", "GoRami", "Monopoly", "Chess", "Go", "Go Fish", "golang",
+                "17 days"), planner.filter("", GameData.MIN_PLAYERS, false)
+                .map(BoardGame::getName).toList());
+        // ties keep the order of the current games, here by name descending
+        planner.reset();
+        planner.filter("", GameData.NAME, false);
+        assertEquals(List.of("Tucano", "Monopoly", "GoRami", "golang", "Go Fish", "Go", "Chess",
+                "17 days"), planner.filter("", GameData.MIN_PLAYERS, false)
+                .map(BoardGame::getName).toList());
+    }
+
+    @Test
+    public void testSortOnNameIgnoresCase() {
+        List<BoardGame> named = new ArrayList<>(games);
+        int id = 100;
+        for (String name : List.of("\u00c9CLAIR", "\u00e9clair", "Stra\u00dfe", "STRASSE",
+                "Zebra", "\u00e4rger")) {
+            named.add(new BoardGame(name, id++, 1, 2, 10, 20, 1.0, 1, 5.0, 2000));
+        }
+        for (boolean ascending : List.of(true, false)) {
+            Comparator<BoardGame> byName =
+                    (g1, g2) -> g1.getName().compareToIgnoreCase(g2.getName());
+            List<BoardGame> expected = new ArrayList<>(named);
+            expected.sort(ascending ? byName : byName.reversed());
+            assertEquals(expected,
+                    Sorting.sortOn(named.stream(), GameData.NAME, ascending).toList());
+            Planner planner = new Planner(new LinkedHashSet<>(named));
+            assertEquals(expected, planner.filter("", GameData.NAME, ascending).toList());
+        }
+    }
+
+    @Test
+    public void testFilterSortKeys() {
+        Planner planner = new Planner(games);
+        List<SortKey> order = List.of(new SortKey(GameData.MIN_PLAYERS, false),
+                new SortKey(GameData.RATING, true));
+        assertEquals(List.of("Tucano", "Monopoly", "GoRami", "Go Fish", "Go", "golang", "Chess",
+                "17 days"), planner.filter("", order).map(BoardGame::getName).toList());
+        planner.reset();
+        assertEquals(List.of("Monopoly", "GoRami", "Go Fish"),
+                planner.filter("", order, 1, 3).map(BoardGame::getName).toList());
+        // a single key is the same as the column and direction
+        planner.reset();
+        assertEquals(planner.filter("name ~= go", GameData.RATING, false).toList(),
+                new Planner(games).filter("name ~= go",
+                        List.of(new SortKey(GameData.RATING, false))).toList());
+        assertThrows(IllegalArgumentException.class, () -> planner.filter("", (List<SortKey>) null));
+        assertThrows(IllegalArgumentException.class, () -> new SortKey(null, true));
+    }
+
+    @Test
+    public void testNarrowingKeepsOrder() {
+        Planner planner = new Planner(games);
+        planner.filter("minplayers >= 2", GameData.RATING, false);
+        assertEquals(new Planner(games).filter("minplayers >= 2, maxplayers <= 10",
+                GameData.RATING, false).toList(),
+                planner.filter("maxplayers <= 10", GameData.RATING, false).toList());
+
+        // a refresh can change values, so the same order is sorted again
+        Set<BoardGame> latest = new LinkedHashSet<>(games);
+        latest.removeIf(game -> game.getName().equals("Monopoly"));
+        latest.add(new BoardGame("Monopoly", 8, 6, 10, 20, 1000, 1.0, 800, 9.9, 2007));
+        planner.refresh(latest);
+        assertEquals(new Planner(latest).filter("minplayers >= 2, maxplayers <= 10",
+                GameData.RATING, false).toList(),
+                planner.filter("", GameData.RATING, false).toList());
+    }
+
+    @Test
+    public void testOtherOrderIsSortedAgain() {
+        List<SortKey> ratingDesc = List.of(new SortKey(GameData.RATING, false));
+        List<SortKey> ratingAsc = List.of(new SortKey(GameData.RATING, true));
+        List<SortKey> playersDesc = List.of(new SortKey(GameData.MIN_PLAYERS, false));
+        List<SortKey> playersThenName = List.of(new SortKey(GameData.MIN_PLAYERS, false),
+                new SortKey(GameData.NAME, false));
+
+        // the other direction
+        Planner planner = new Planner(games);
+        planner.filter("minplayers >= 2", ratingDesc);
+        assertEquals(new Planner(games).filter("minplayers >= 2, maxplayers <= 10", ratingAsc)
+                .toList(), planner.filter("maxplayers <= 10", ratingAsc).toList());
+
+        // another column, and more keys after the ones sorted on, which break ties
+        planner = new Planner(games);
+        planner.filter("minplayers >= 1", playersDesc);
+        assertEquals(new Planner(games).filter("minplayers >= 1", playersThenName).toList(),
+                planner.filter("", playersThenName).toList());
+        assertEquals(new Planner(games).filter("minplayers >= 1, maxplayers <= 10",
+                ratingDesc).toList(), planner.filter("maxplayers <= 10", ratingDesc).toList());
+
+        // a reset puts the games back in row order
+        planner = new Planner(games);
+        planner.filter("minplayers >= 2", ratingDesc, 0, 2);
+        planner.reset();
+        assertEquals(new Planner(games).filter("minplayers >= 2", ratingDesc).toList(),
+                planner.filter("minplayers >= 2", ratingDesc).toList());
+        planner.reset();
+        assertEquals(new Planner(games).filter("", ratingDesc, 0, 3).toList(),
+                planner.filter("", ratingDesc, 0, 3).toList());
+    }
+
+    @Test
+    public void testFilterPage() {
+        Planner planner = new Planner(games);
+        List<BoardGame> all = planner.filter("", GameData.RATING, false).toList();
+        planner.reset();
+        assertEquals(all.subList(0, 3), planner.filter("", GameData.RATING, false, 0, 3).toList());
+        assertEquals(all.subList(2, 5), planner.filter("", GameData.RATING, false, 2, 3).toList());
+        assertEquals(0, planner.filter("", GameData.RATING, false, 20, 3).count());
+
+        // the next filter still builds on every matching game
+        planner.reset();
+        planner.filter("minplayers >= 2", GameData.NAME, true, 0, 1).toList();
+        assertEquals(new Planner(games).filter("minplayers >= 2, rating > 7").toList(),
+                planner.filter("rating > 7").toList());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> planner.filter("", GameData.NAME, true, -1, 3));
+        assertThrows(IllegalArgumentException.class,
+                () -> planner.filter("", GameData.NAME, true, 0, -3));
+    }
+
+    @Test
+    public void testFilterList() {
+        Planner planner = new Planner(games);
+        List<SortKey> order = List.of(new SortKey(GameData.RATING, false));
+        List<BoardGame> list = planner.filterList("minplayers >= 2", order);
+        assertEquals(new Planner(games).filter("minplayers >= 2", order).toList(), list);
+        assertEquals("Chess", list.get(0).getName());
+        assertEquals(list.subList(1, 4), planner.filterList("", order, 1, 3));
+        assertEquals(list.subList(1, 4).subList(1, 2), list.subList(2, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(list.size()));
+        assertThrows(UnsupportedOperationException.class, () -> list.remove(0));
+
+        // the list keeps its games when the planner moves on
+        List<BoardGame> before = List.copyOf(list);
+        planner.filter("rating > 9");
+        planner.reset();
+        assertEquals(before, list);
+    }
+
+    @Test
+    public void testComplete() {
+        Planner planner = new Planner(games);
+        List<BoardGame> completions = planner.complete("go", 3);
+        assertEquals(3, completions.size());
+        assertEquals("Go", completions.get(0).getName());
+        assertEquals("Go Fish", completions.get(1).getName());
+        assertEquals("GoRami", completions.get(2).getName());
+        assertEquals("Go Fish", planner.complete("GO F", 10).get(0).getName());
+        assertEquals(0, planner.complete("xyz", 10).size());
+    }
+
+    @Test
+    public void testPlanCache() {
+        Planner planner = new Planner(games);
+        assertEquals(3, planner.filter("minplayers >= 2, maxPlayers <= 6").count());
+        planner.reset();
+        assertEquals(3, planner.filter("max_players<=6,MIN_PLAYERS>=2").count());
+        planner.reset();
+        // "> =" is not an operator, so this is a different (invalid) filter
+        assertEquals(8, planner.filter("minplayers > = 2, maxplayers<=6").count());
+        assertEquals(1, planner.getPlanCacheStats().getHits());
+        assertEquals(2, planner.getPlanCacheStats().getMisses());
+    }
+
+    @Test
+    public void testResultCache() {
+        Planner planner = new Planner(games);
+        List<BoardGame> first = planner.filter("name ~= go").toList();
+        List<BoardGame> second = planner.filter("minplayers >= 2", GameData.RATING, false).toList();
+        planner.reset();
+        assertEquals(first.toString(), planner.filter("name~=go").toList().toString());
+        assertEquals(second.toString(),
+                planner.filter("minPlayers>=2", GameData.RATING, false).toList().toString());
+        assertEquals(2, planner.getResultCacheStats().getHits());
+
+        // the same filter from a different set of games is a different query
+        planner.reset();
+        assertEquals(7, planner.filter("minplayers >= 2", GameData.RATING, false).count());
+        assertEquals(2, planner.getResultCacheStats().getHits());
+
+        // a refresh that changes the games drops the results
+        Set<BoardGame> latest = new LinkedHashSet<>(games);
+        latest.removeIf(game -> game.getName().equals("Go"));
+        planner.refresh(latest);
+        planner.reset();
+        assertEquals(3, planner.filter("name ~= go").count());
+        assertEquals(1, planner.getResultCacheStats().getSize());
+    }
+
+    @Test
+    public void testSessionsShareDataset() {
+        GameDataset dataset = GameDataset.of(games);
+        Planner first = new Planner(dataset);
+        Planner second = new Planner(dataset);
+        assertEquals(4, first.filter("name ~= go").count());
+        assertEquals(8, second.filter("").count());
+
+        // a query one session ran is a hit for the others
+        second.reset();
+        assertEquals(first.filter("").toList(), second.filter("name~=go").toList());
+        assertEquals(1, first.getResultCacheStats().getHits());
+
+        // a refresh only moves the session it is called on
+        Set<BoardGame> latest = new LinkedHashSet<>(games);
+        latest.removeIf(game -> game.getName().equals("Go"));
+        second.refresh(latest);
+        second.reset();
+        first.reset();
+        assertEquals(7, second.filter("").count());
+        assertEquals(8, first.filter("").count());
+        assertEquals(8, new Planner(dataset).filter("").count());
+    }
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        String[][] chains = {{"minplayers >= 2", "rating > 7"}, {"name ~= go", "year > 2001"},
+            {"maxplayers <= 10", "difficulty < 8", "rank > 100"}, {"", "minplaytime >= 30"}};
+        List<SortKey> order = List.of(new SortKey(GameData.RATING, false));
+        List<List<BoardGame>> expected = new ArrayList<>();
+        for (String[] chain : chains) {
+            Planner planner = new Planner(games);
+            for (String filter : chain) {
+                planner.filter(filter, order);
+            }
+            expected.add(planner.filter("", order).toList());
+        }
+
+        GameDataset dataset = GameDataset.of(games);
+        Planner shared = new Planner(dataset);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> runs = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                int chain = i % chains.length;
+                runs.add(threads.submit(() -> {
+                    Planner planner = new Planner(dataset);
+                    for (String filter : chains[chain]) {
+                        planner.filter(filter, order, 0, 2);
+                    }
+                    // one session used from every thread at once
+                    shared.filter("minplayers >= 2", GameData.NAME, true).count();
+                    shared.reset();
+                    return planner.filter("", order).toList().equals(expected.get(chain));
+                }));
+            }
+            for (Future<Boolean> run : runs) {
+                assertEquals(true, run.get());
+            }
+        } finally {
+            threads.shutdown();
+        }
+        shared.reset();
+        assertEquals(8, shared.filter("").count());
+    }
+
     @Test
     public void testReset() {
         IPlanner planner = new Planner(games);
@@ -212,4 +559,70 @@ public class TestPlanner {
         List<BoardGame> filtered2 = planner.filter("").toList();
         assertEquals(8, filtered2.size());
     }
+
+    @Test
+    public void testRefresh() {
+        Planner planner = new Planner(games);
+        List<BoardGame> goGames = planner.filter("name ~= Go").toList();
+        assertEquals(4, goGames.size());
+
+        Set<BoardGame> latest = new LinkedHashSet<>(games);
+        latest.removeIf(game -> game.getName().equals("Chess") || game.getName().equals("GoRami"));
+        latest.removeIf(game -> game.getName().equals("golang"));
+        latest.add(new BoardGame("golang", 4, 2, 7, 50, 55, 7.0, 400, 9.9, 2003));
+        latest.add(new BoardGame("Go Go Go", 9, 2, 4, 10, 15, 2.0, 900, 6.0, 2010));
+
+        RefreshResult result = planner.refresh(latest);
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(2, result.getDeleted());
+        assertEquals(5, result.getUnchanged());
+
+        // current filter keeps its games, minus GoRami, with golang updated
+        List<BoardGame> current = planner.filter("").toList();
+        assertEquals(3, current.size());
+        assertEquals(9.9, current.get(2).getRating());
+        assertEquals(goGames.get(0).toString(), current.get(0).toString());
+
+        // the new game shows up after a reset
+        planner.reset();
+        assertEquals(7, planner.filter("").count());
+        assertEquals(0, planner.refresh(latest).getInserted());
+        assertEquals(false, planner.refresh(latest).hasChanges());
+    }
+
+    @Test
+    public void testRefreshSharedObjectid() {
+        Set<BoardGame> shared = new LinkedHashSet<>();
+        shared.add(new BoardGame("Alpha", 1, 2, 4, 30, 60, 2.0, 10, 7.0, 2001));
+        shared.add(new BoardGame("Beta", 1, 2, 4, 30, 60, 2.0, 20, 7.0, 2002));
+        Planner planner = new Planner(shared);
+        Planner alpha = new Planner(shared);
+        assertEquals(1, alpha.filter("name == alpha").count());
+
+        Set<BoardGame> latest = new LinkedHashSet<>();
+        latest.add(new BoardGame("Beta", 1, 2, 4, 30, 60, 2.0, 20, 7.0, 2002));
+        RefreshResult result = planner.refresh(latest);
+        assertEquals(0, result.getInserted());
+        assertEquals(0, result.getUpdated());
+        assertEquals(1, result.getDeleted());
+        assertEquals(1, result.getUnchanged());
+        List<BoardGame> current = planner.filter("").toList();
+        assertEquals(1, current.size());
+        assertEquals("Beta", current.get(0).getName());
+        assertEquals(false, planner.refresh(latest).hasChanges());
+
+        // a session filtered on the deleted game is left with no games, not with Beta
+        assertEquals(1, alpha.refresh(latest).getDeleted());
+        assertEquals(0, alpha.filter("").count());
+
+        // a game left without a row of its name takes the place of one left without a game
+        Set<BoardGame> renamed = new LinkedHashSet<>(latest);
+        renamed.add(new BoardGame("Gamma", 1, 2, 4, 30, 60, 2.0, 30, 7.0, 2003));
+        result = new Planner(shared).refresh(renamed);
+        assertEquals(0, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(0, result.getDeleted());
+        assertEquals(1, result.getUnchanged());
+    }
 }
@@ -0,0 +1,209 @@
+package student;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Compares the range encoded bitmaps with the scalar conditions they answer.
+ */
+class BitmapIndexTest {
+    /** ratings around the bucket boundaries of 0 and 7. */
+    private static final double[] RATINGS = {6.99, 7.0, 7.01, 6.0, 8.0, -0.0, 0.0, -0.5, 0.5,
+        Double.NaN, 10.0, 7.5, 6.5, -1.0};
+    /** values compared with, written as in a filter. */
+    private static final String[] VALUES = {"7", "6", "8", "0", "-0", "-1", "10", "11", "-5"};
+    /** the operators a bitmap can answer. */
+    private static final String[] OPERATORS = {">", "<", ">=", "<=", "==", "!="};
+
+    @Test
+    void testDoubleBucketsMatchScalarConditions() {
+        GameTable table = table(RATINGS.length * 3);
+        assertNotNull(table.bitmap(GameData.RATING));
+        for (String op : OPERATORS) {
+            for (String value : VALUES) {
+                String filter = "rating" + op + value;
+                FilterCondition condition = FilterPlan.compile(filter).getConditions()[0];
+                assertEquals(scan(table, condition.bind(table)),
+                        rows(table.bitmap(GameData.RATING).matching(condition)), filter);
+            }
+        }
+    }
+
+    @Test
+    void testBoundaryOfWholeNumber() {
+        GameTable table = table(RATINGS.length);
+        BitmapIndex ratings = table.bitmap(GameData.RATING);
+        // rows 0, 1 and 2 hold 6.99, 7.0 and 7.01
+        assertEquals(List.of(1, 2, 4, 10, 11), rows(ratings.matching(
+                FilterPlan.compile("rating>=7").getConditions()[0])));
+        assertEquals(List.of(1), rows(ratings.matching(
+                FilterPlan.compile("rating==7").getConditions()[0])));
+        assertEquals(List.of(0, 3, 5, 6, 7, 8, 12, 13), rows(ratings.matching(
+                FilterPlan.compile("rating<7").getConditions()[0])));
+    }
+
+    @Test
+    void testNaNOnlyMatchesNotEquals() {
+        GameTable table = table(RATINGS.length);
+        int nan = 9;
+        assertTrue(Double.isNaN(RATINGS[nan]));
+        for (String op : OPERATORS) {
+            for (String value : VALUES) {
+                FilterCondition condition = FilterPlan.compile("rating" + op + value)
+                        .getConditions()[0];
+                assertEquals(op.equals("!="), rows(table.bitmap(GameData.RATING)
+                        .matching(condition)).contains(nan), "rating" + op + value);
+            }
+        }
+    }
+
+    @Test
+    void testBinnedColumnsMatchScalarConditions() {
+        Random random = new Random(13);
+        List<BoardGame> games = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            // years skewed to recent ones, ratings in hundredths with some NaN
+            int year = 2049 - (int) Math.sqrt(random.nextInt(10000));
+            double rating = random.nextInt(30) == 0 ? Double.NaN : random.nextInt(1001) / 100.0;
+            games.add(new BoardGame("Game " + i, i, 1 + random.nextInt(4), 4, 10, 20,
+                    random.nextInt(50) / 10.0, i, rating, year));
+        }
+        GameTable table = GameTable.of(games);
+        for (GameData column : List.of(GameData.YEAR, GameData.RATING)) {
+            BitmapIndex bitmap = table.bitmap(column);
+            // far more values than bins, split into nearly MAX_BINS even bins
+            assertTrue(bitmap.bins() <= BitmapIndex.MAX_BINS, column.toString());
+            assertTrue(bitmap.bins() > BitmapIndex.MAX_BINS / 2, column.toString());
+            int from = column == GameData.YEAR ? 1945 : -2;
+            int to = column == GameData.YEAR ? 2055 : 12;
+            for (int value = from; value <= to; value++) {
+                for (String op : OPERATORS) {
+                    String filter = column.getColumnName() + op + value;
+                    FilterCondition condition = FilterPlan.compile(filter).getConditions()[0];
+                    assertEquals(scan(table, condition.bind(table)),
+                            rows(bitmap.matching(condition)), filter);
+                }
+            }
+        }
+        // few values keep a bin each
+        assertEquals(4, table.bitmap(GameData.MIN_PLAYERS).bins());
+    }
+
+    @Test
+    void testTooManyValuesHasNoBitmap() {
+        List<BoardGame> games = new ArrayList<>();
+        for (int i = 0; i <= BitmapIndex.MAX_VALUES; i++) {
+            games.add(new BoardGame("Game " + i, i, 2, 4, 10, 20, 2.0, i, 7.0, 1000 + i));
+        }
+        GameTable table = GameTable.of(games);
+        assertNull(table.bitmap(GameData.YEAR));
+        assertNotNull(table.bitmap(GameData.MIN_PLAYERS));
+        for (String filter : List.of("year>=1100", "year==1256", "year!=1000,minplayers==2")) {
+            assertEquals(scan(table, filter), apply(table, filter), filter);
+        }
+    }
+
+    @Test
+    void testBitmapsWithOtherConditions() {
+        GameTable table = table(RATINGS.length * 5);
+        for (String filter : List.of("rating>=7,minplaytime>=20", "rating!=7,name~=1",
+                "minplayers>=3,rating<8,maxplaytime<=40", "year==2003,rating>0,rank>10",
+                "difficulty<=6,maxplayers>2,name~=game")) {
+            assertEquals(scan(table, filter), apply(table, filter), filter);
+        }
+    }
+
+    /**
+     * Filters every row of a table with a plan, starting from the rows as a filtered set so
+     * the bitmaps are used rather than the sorted indexes.
+     *
+     * @param table  the table
+     * @param filter the filter
+     * @return the matching rows
+     */
+    private static List<Integer> apply(GameTable table, String filter) {
+        return box(FilterPlan.compile(filter).apply(table, table.allRows(), false));
+    }
+
+    /**
+     * Tests every row of a table against every condition of a filter.
+     *
+     * @param table  the table
+     * @param filter the filter
+     * @return the matching rows
+     */
+    private static List<Integer> scan(GameTable table, String filter) {
+        IntPredicate all = row -> true;
+        for (FilterCondition condition : FilterPlan.compile(filter).getConditions()) {
+            all = all.and(condition.bind(table));
+        }
+        return scan(table, all);
+    }
+
+    /**
+     * Tests every row of a table.
+     *
+     * @param table the table
+     * @param test  the test
+     * @return the rows that pass
+     */
+    private static List<Integer> scan(GameTable table, IntPredicate test) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            if (test.test(row)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Lists the rows set in a bitmap.
+     *
+     * @param bits the bitmap
+     * @return the rows
+     */
+    private static List<Integer> rows(long[] bits) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < bits.length * 64; row++) {
+            if (BitmapIndex.contains(bits, row)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Boxes rows.
+     *
+     * @param rows the rows
+     * @return the rows as a list
+     */
+    private static List<Integer> box(int[] rows) {
+        return Arrays.stream(rows).boxed().toList();
+    }
+
+    /**
+     * Builds a table whose ratings cycle through RATINGS, and whose other columns cycle
+     * through a few values each.
+     *
+     * @param size the number of rows
+     * @return the table
+     */
+    private static GameTable table(int size) {
+        List<BoardGame> games = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            games.add(new BoardGame("Game " + i, i, 1 + i % 4, 2 + i % 3, 10 + i % 5 * 10,
+                    20 + i % 7 * 10, i % 9, i * 3, RATINGS[i % RATINGS.length],
+                    2000 + i % 6));
+        }
+        return GameTable.of(games);
+    }
+}
@@ -0,0 +1,157 @@
+package student;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Compares the ranges of the sorted column indexes with plain scans, on a table large enough
+ * for the planner to take the index path.
+ */
+class ColumnIndexTest {
+    /** number of rows in the table. */
+    private static final int ROWS = 2000;
+    /** the numeric columns. */
+    private static final GameData[] COLUMNS = {GameData.MIN_PLAYERS, GameData.MAX_PLAYERS,
+        GameData.MIN_TIME, GameData.MAX_TIME, GameData.DIFFICULTY, GameData.RANK,
+        GameData.RATING, GameData.YEAR};
+    /** the operators an index can answer. */
+    private static final String[] OPERATORS = {"<", "<=", "==", ">=", ">"};
+
+    @Test
+    void testRangesMatchScan() {
+        GameTable table = table();
+        int indexed = 0;
+        for (GameData column : COLUMNS) {
+            ColumnIndex index = table.index(column);
+            for (int value : values(table, column)) {
+                for (String op : OPERATORS) {
+                    String filter = column.getColumnName() + op + value;
+                    FilterCondition condition = FilterPlan.compile(filter).getConditions()[0];
+                    List<Integer> expected = scan(table, condition.bind(table));
+                    RowRange range = index.range(condition);
+                    assertTrue(range.isExact(), filter);
+                    assertEquals(expected, box(range.toRows()), filter);
+
+                    // the plan takes the index path for small enough ranges
+                    assertEquals(expected, box(FilterPlan.compile(filter)
+                            .apply(table, table.allRows(), true)), filter);
+                    if (range.size() <= ROWS / 4) {
+                        indexed++;
+                    }
+                }
+            }
+        }
+        assertTrue(indexed > 100);
+    }
+
+    @Test
+    void testNotEqualsAndContainsAreNotIndexed() {
+        GameTable table = table();
+        assertNull(table.index(GameData.RATING)
+                .range(FilterPlan.compile("rating!=7").getConditions()[0]));
+        assertNull(table.index(GameData.YEAR)
+                .range(FilterPlan.compile("year~=20").getConditions()[0]));
+    }
+
+    @Test
+    void testSeveralConditionsUseTheNarrowestIndex() {
+        GameTable table = table();
+        for (String filter : List.of("rank<50,rating>=5", "year==2010,minplayers<=2",
+                "minplaytime>200,maxplaytime<100", "rating<0,difficulty>=4,rank>100")) {
+            IntPredicate all = row -> true;
+            for (FilterCondition condition : FilterPlan.compile(filter).getConditions()) {
+                all = all.and(condition.bind(table));
+            }
+            assertEquals(scan(table, all), box(FilterPlan.compile(filter)
+                    .apply(table, table.allRows(), true)), filter);
+        }
+    }
+
+    /**
+     * Picks the values to compare a column with: every whole number from below its smallest
+     * value to above its largest, or a spread of them for columns with a wide range, and
+     * the int extremes.
+     *
+     * @param table  the table
+     * @param column the column
+     * @return the values
+     */
+    private static List<Integer> values(GameTable table, GameData column) {
+        int[] ints = table.intColumn(column);
+        double[] doubles = table.doubleColumn(column);
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int row = 0; row < ROWS; row++) {
+            double value = ints != null ? ints[row] : doubles[row];
+            if (!Double.isNaN(value)) {
+                min = Math.min(min, (int) Math.floor(value));
+                max = Math.max(max, (int) Math.ceil(value));
+            }
+        }
+        List<Integer> values = new ArrayList<>(List.of(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        int step = Math.max(1, (max - min) / 40);
+        for (int value = min - 1; value <= max + 1; value += step) {
+            values.add(value);
+        }
+        values.add(max);
+        values.add(max + 1);
+        return values;
+    }
+
+    /**
+     * Tests every row of a table.
+     *
+     * @param table the table
+     * @param test  the test
+     * @return the rows that pass, in row order
+     */
+    private static List<Integer> scan(GameTable table, IntPredicate test) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < table.size(); row++) {
+            if (test.test(row)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Boxes rows.
+     *
+     * @param rows the rows
+     * @return the rows as a list
+     */
+    private static List<Integer> box(int[] rows) {
+        return Arrays.stream(rows).boxed().toList();
+    }
+
+    /**
+     * Builds a table of random games, with repeated values in every column and some NaN
+     * ratings and difficulties.
+     *
+     * @return the table
+     */
+    private static GameTable table() {
+        Random random = new Random(12);
+        List<BoardGame> games = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            int minPlayers = 1 + random.nextInt(6);
+            int minTime = 5 * random.nextInt(60);
+            double difficulty = random.nextInt(20) == 0 ? Double.NaN
+                    : random.nextInt(50) / 10.0;
+            double rating = random.nextInt(20) == 0 ? Double.NaN
+                    : random.nextInt(2001) / 100.0 - 5;
+            games.add(new BoardGame("Game " + i, i, minPlayers, minPlayers + random.nextInt(8),
+                    minTime, minTime + 5 * random.nextInt(30), difficulty,
+                    random.nextInt(5000) - 10, rating, 1950 + random.nextInt(75)));
+        }
+        return GameTable.of(games);
+    }
+}
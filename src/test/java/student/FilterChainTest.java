@@ -0,0 +1,161 @@
+package student;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Runs random chains of filters, sorts, pages and resets through a planner and compares every
+ * result with filtering the games a step keeps and sorting them again in full, so a planner
+ * that wrongly skips a sort is caught.
+ */
+class FilterChainTest {
+    /** filters the chains pick from, some narrowing the ones before them. */
+    private static final String[] FILTERS = {"", "minplayers>=2", "rating>5", "name~=a",
+        "year<2005,maxplaytime<=100", "difficulty!=2", "rank<300", "name>m", "minplaytime==30",
+        "maxplayers<=8"};
+    /** columns the sorts pick from, ID changing no order. */
+    private static final GameData[] COLUMNS = {GameData.NAME, GameData.RATING,
+        GameData.DIFFICULTY, GameData.MIN_PLAYERS, GameData.YEAR, GameData.ID};
+    /** number of random tables. */
+    private static final int TABLES = 150;
+    /** steps in the chain run on each table. */
+    private static final int STEPS = 12;
+
+    @Test
+    void testChainsMatchFullSort() {
+        Random random = new Random(23);
+        for (int t = 0; t < TABLES; t++) {
+            List<BoardGame> games = games(random, 1 + random.nextInt(t % 5 == 0 ? 5000 : 300));
+            GameTable table = GameTable.of(games);
+            Planner planner = new Planner(table);
+            List<BoardGame> model = new ArrayList<>(games);
+            List<SortKey> last = List.of(new SortKey(GameData.NAME, true));
+            for (int step = 0; step < STEPS; step++) {
+                if (random.nextInt(10) == 0) {
+                    planner.reset();
+                    model = new ArrayList<>(games);
+                    continue;
+                }
+                String filter = FILTERS[random.nextInt(FILTERS.length)];
+                List<SortKey> order = order(random, last);
+                if (!order.isEmpty()) {
+                    last = order;
+                }
+                IntPredicate matches = FilterPlan.compile(filter).bind(table);
+                model.removeIf(game -> !matches.test(rowOf(game)));
+                model.sort(comparator(order));
+
+                String message = "table " + t + " step " + step + ": " + filter + " " + order;
+                if (random.nextInt(3) == 0) {
+                    int offset = random.nextInt(5);
+                    int limit = random.nextInt(20);
+                    assertEquals(model.subList(Math.min(offset, model.size()),
+                            Math.min(offset + limit, model.size())),
+                            planner.filter(filter, order, offset, limit).toList(), message);
+                } else {
+                    assertEquals(model, planner.filter(filter, order).toList(), message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the order of the next step: the last order again, a prefix of it, which needs no
+     * sort, or new random keys.
+     *
+     * @param random the random numbers
+     * @param last   the last order asked for
+     * @return the order
+     */
+    private static List<SortKey> order(Random random, List<SortKey> last) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return last;
+            case 1:
+                return last.subList(0, random.nextInt(last.size() + 1));
+            default:
+                List<SortKey> order = new ArrayList<>();
+                int keys = 1 + random.nextInt(3);
+                for (int k = 0; k < keys; k++) {
+                    order.add(new SortKey(COLUMNS[random.nextInt(COLUMNS.length)],
+                            random.nextBoolean()));
+                }
+                return order;
+        }
+    }
+
+    /**
+     * Gets the row of a game, games being made with their row as id.
+     *
+     * @param game the game
+     * @return its row
+     */
+    private static int rowOf(BoardGame game) {
+        return game.getId();
+    }
+
+    /**
+     * Builds the stable comparator of a sort on several columns.
+     *
+     * @param order the columns to sort on
+     * @return the comparator
+     */
+    private static Comparator<BoardGame> comparator(List<SortKey> order) {
+        Comparator<BoardGame> chain = (a, b) -> 0;
+        for (SortKey key : order) {
+            Comparator<BoardGame> column = comparator(key.getColumn());
+            chain = chain.thenComparing(key.isAscending() ? column : column.reversed());
+        }
+        return chain;
+    }
+
+    /**
+     * Gets the comparator of games on one column, in ascending order.
+     *
+     * @param column the column
+     * @return the comparator
+     */
+    private static Comparator<BoardGame> comparator(GameData column) {
+        switch (column) {
+            case NAME:
+                return (a, b) -> new NameKey(a.getName()).compareTo(new NameKey(b.getName()));
+            case RATING:
+                return Comparator.comparingDouble(BoardGame::getRating);
+            case DIFFICULTY:
+                return Comparator.comparingDouble(BoardGame::getDifficulty);
+            case MIN_PLAYERS:
+                return Comparator.comparingInt(BoardGame::getMinPlayers);
+            case YEAR:
+                return Comparator.comparingInt(BoardGame::getYearPublished);
+            default:
+                return (a, b) -> 0;
+        }
+    }
+
+    /**
+     * Builds random games, their ids being their rows, with names that differ only in case
+     * and many ties in every column.
+     *
+     * @param random the random numbers
+     * @param size   the number of games
+     * @return the games
+     */
+    private static List<BoardGame> games(Random random, int size) {
+        List<BoardGame> games = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String name = (random.nextBoolean() ? "N" : "n") + (char) ('a' + random.nextInt(26))
+                    + random.nextInt(20);
+            games.add(new BoardGame(name, i, random.nextInt(8), random.nextInt(12),
+                    random.nextInt(4) * 30, random.nextInt(300), random.nextInt(50) / 10.0,
+                    random.nextInt(1000), random.nextInt(100) / 10.0, 1990 + random.nextInt(30)));
+        }
+        return games;
+    }
+}
@@ -175,6 +175,29 @@ class GameListTest {
         //System.out.println(list.getGameNames());
     }
 
+    @Test
+    void testAddToListFromList() {
+        List<BoardGame> read = new ArrayList<>();
+        List<BoardGame> source = List.copyOf(games);
+        List<BoardGame> list = new AbstractList<>() {
+            @Override
+            public BoardGame get(int index) {
+                read.add(source.get(index));
+                return source.get(index);
+            }
+
+            @Override
+            public int size() {
+                return source.size();
+            }
+        };
+        GameList added = new GameList();
+        added.addToList("2", list);
+        added.addToList("4-5", list);
+        assertEquals(List.of("Chess", "Go Fish", "golang"), added.getGameNames());
+        assertEquals(3, read.size()); // only the games added were read
+    }
+
     @Test
     void testRemoveSingleGameFromList() {
         gameList.removeFromList("1");
@@ -0,0 +1,275 @@
+package student;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Patches random tables over and over, and compares every index of the patched table with
+ * the same index of a table built from scratch over the games it is left with.
+ */
+class GameTablePatchTest {
+    /** single conditions, covering every index. */
+    private static final String[] FILTERS = {"minplayers>=3", "maxplayers==4", "year<2005",
+        "year!=2010", "rating>6", "rating<=2", "rating==7", "rating!=5", "difficulty>=3",
+        "rank<100", "minplaytime==30", "maxplaytime>200", "name~=go", "name~=castle",
+        "name~=ti", "name==go fish", "name<m", "name>=t", "name>castle"};
+    /** the sorts compared, one of them too wide to pack into a long. */
+    private static final List<List<SortKey>> ORDERS = List.of(
+            List.of(new SortKey(GameData.NAME, true)),
+            List.of(new SortKey(GameData.RATING, false)),
+            List.of(new SortKey(GameData.YEAR, true), new SortKey(GameData.NAME, false)),
+            List.of(new SortKey(GameData.RANK, true), new SortKey(GameData.MAX_TIME, false),
+                    new SortKey(GameData.DIFFICULTY, true), new SortKey(GameData.NAME, true)));
+    /** words the names are made of, so names share trigrams. */
+    private static final String[] WORDS = {"Go", "Fish", "Castle", "Ticket", "tiny", "GO",
+        "castles", "Ride", "a"};
+    /** the columns that get a bitmap index. */
+    private static final GameData[] BITMAP_COLUMNS = {GameData.MIN_PLAYERS,
+        GameData.MAX_PLAYERS, GameData.YEAR, GameData.DIFFICULTY, GameData.RATING};
+
+    @Test
+    void testPatchedIndexesMatchFreshTable() {
+        Random random = new Random(6);
+        for (int t = 0; t < 40; t++) {
+            List<BoardGame> rows = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(t % 4 == 0 ? 3000 : 200); i++) {
+                rows.add(game(random, rows.size()));
+            }
+            GameTable table = GameTable.of(rows);
+            for (int round = 0; round < 5; round++) {
+                if (random.nextBoolean()) {
+                    for (GameData column : BITMAP_COLUMNS) {
+                        table.bitmap(column); // so the patch has bitmaps to patch
+                    }
+                }
+                GameTable.Patch patch = new GameTable.Patch(table);
+                for (int row = 0; row < rows.size(); row++) {
+                    if (rows.get(row) == null) {
+                        continue;
+                    }
+                    int change = random.nextInt(10);
+                    if (change == 0) {
+                        patch.delete(row);
+                        rows.set(row, null);
+                    } else if (change == 1) {
+                        BoardGame game = game(random, rows.get(row).getId());
+                        patch.replace(row, game);
+                        rows.set(row, game);
+                    }
+                }
+                for (int i = random.nextInt(rows.size() / 5 + 2); i > 0; i--) {
+                    BoardGame game = game(random, rows.size());
+                    assertEquals(rows.size(), patch.add(game));
+                    rows.add(game);
+                }
+                table = patch.build();
+                compare(table, "table " + t + " round " + round);
+            }
+            GameTable compacted = table.compact();
+            assertEquals(table.count(), compacted.size());
+            assertEquals(toList(table, table.allRows()), toList(compacted, compacted.allRows()));
+        }
+    }
+
+    @Test
+    void testPatchRejectsRowsAlreadyGone() {
+        GameTable table = GameTable.of(List.of(game(new Random(1), 0), game(new Random(2), 1)));
+        GameTable.Patch patch = new GameTable.Patch(table);
+        patch.delete(0);
+        assertThrows(IllegalArgumentException.class, () -> patch.delete(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> patch.replace(0, game(new Random(3), 0)));
+        GameTable patched = patch.build();
+        assertArrayEquals(new int[] {1}, patched.allRows());
+        assertThrows(IllegalArgumentException.class,
+                () -> new GameTable.Patch(patched).delete(0));
+    }
+
+    @Test
+    void testRefreshCompactsInBackground() {
+        Random random = new Random(26);
+        Set<BoardGame> games = new LinkedHashSet<>();
+        for (int i = 0; i < 500; i++) {
+            games.add(game(random, i));
+        }
+        Planner planner = new Planner(games);
+        List<SortKey> order = List.of(new SortKey(GameData.RATING, true));
+        List<BoardGame> before = planner.filter("year<2010", order).toList();
+
+        // fewer deleted rows than the table is compacted for
+        Set<BoardGame> latest = new LinkedHashSet<>(games);
+        latest.removeIf(game -> game.getId() % 10 == 0);
+        assertEquals(50, planner.refresh(latest).getDeleted());
+        assertFalse(planner.awaitCompaction());
+
+        latest.removeIf(game -> game.getId() % 2 == 0);
+        assertEquals(200, planner.refresh(latest).getDeleted());
+        List<BoardGame> current = planner.filter("", order).toList();
+        assertTrue(planner.awaitCompaction());
+        assertEquals(current, planner.filter("", order).toList());
+        List<BoardGame> kept = new ArrayList<>(before);
+        kept.removeIf(game -> game.getId() % 2 == 0);
+        assertEquals(kept, current);
+
+        planner.reset();
+        assertEquals(new Planner(latest).filter("rating>5", order).toList(),
+                planner.filter("rating>5", order).toList());
+    }
+
+    /**
+     * Compares the indexes of a patched table with those of a table built from its rows.
+     *
+     * @param table   the patched table
+     * @param message what the table is, for the failures
+     */
+    private static void compare(GameTable table, String message) {
+        int[] live = table.allRows();
+        List<BoardGame> games = toList(table, live);
+        GameTable fresh = GameTable.of(games);
+        assertEquals(fresh.size(), table.count(), message);
+        // the row of the fresh table each row of the patched table is, -1 if deleted
+        int[] position = new int[table.size()];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < live.length; i++) {
+            position[live[i]] = i;
+        }
+
+        for (String filter : FILTERS) {
+            String where = message + ": " + filter;
+            FilterPlan plan = FilterPlan.compile(filter);
+            FilterCondition condition = plan.getConditions()[0];
+            List<Integer> expected = box(matches(fresh.allRows(), plan.bind(fresh)));
+            assertEquals(expected, map(plan.apply(table, live, true), position), where);
+            IntPredicate test = plan.bind(table);
+            if (condition.getColumn() != GameData.NAME) {
+                RowRange range = table.index(condition.getColumn()).range(condition);
+                if (range != null) {
+                    assertEquals(expected, map(range.toRows(), position), where);
+                }
+                BitmapIndex bitmap = table.bitmap(condition.getColumn());
+                if (bitmap != null) {
+                    assertEquals(expected, map(rowsOf(bitmap.matching(condition)), position),
+                            where);
+                }
+            } else if (condition.getOperation() == Operations.CONTAINS) {
+                int[] candidates = table.trigrams().candidates(condition.getLowerValue());
+                if (candidates != null) {
+                    assertEquals(expected, map(matches(candidates, test), position), where);
+                }
+            } else {
+                RowRange range = table.nameIndex().range(condition);
+                assertEquals(expected, map(matches(range.toRows(), test), position), where);
+            }
+        }
+
+        List<Integer> shuffled = new ArrayList<>(box(live));
+        Collections.shuffle(shuffled, new Random(live.length));
+        int[] some = shuffled.subList(0, live.length / 2).stream().mapToInt(Integer::intValue)
+                .toArray();
+        int[] freshSome = new int[some.length];
+        for (int i = 0; i < some.length; i++) {
+            freshSome[i] = position[some[i]];
+        }
+        for (List<SortKey> order : ORDERS) {
+            String where = message + ": " + order;
+            assertEquals(box(Sorting.sortRows(fresh, fresh.allRows(), order)),
+                    map(Sorting.sortRows(table, live, order), position), where);
+            assertEquals(box(Sorting.sortRows(fresh, freshSome, order)),
+                    map(Sorting.sortRows(table, some, order), position), where);
+        }
+        for (String prefix : new String[] {"go", "Castle", "t", "a"}) {
+            assertEquals(box(fresh.nameIndex().complete(prefix, 7)),
+                    map(table.nameIndex().complete(prefix, 7), position), message + ": " + prefix);
+        }
+    }
+
+    /**
+     * Builds a random game, its name made of a few words, with some NaN and -0.0 ratings.
+     *
+     * @param random the random numbers
+     * @param id     the objectid
+     * @return the game
+     */
+    private static BoardGame game(Random random, int id) {
+        StringBuilder name = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        for (int i = random.nextInt(3); i > 0; i--) {
+            name.append(random.nextBoolean() ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        double rating = random.nextInt(20) == 0 ? Double.NaN
+                : random.nextInt(20) == 0 ? -0.0 : random.nextInt(101) / 10.0;
+        int minPlayers = 1 + random.nextInt(5);
+        int minTime = 15 * random.nextInt(8);
+        return new BoardGame(name.toString(), id, minPlayers, minPlayers + random.nextInt(4),
+                minTime, minTime + 30 * random.nextInt(10), random.nextInt(50) / 10.0,
+                random.nextInt(300), rating, 1995 + random.nextInt(20));
+    }
+
+    /**
+     * Gets the rows that pass a test.
+     *
+     * @param rows the rows to test
+     * @param test the test
+     * @return the rows that pass, in the same order
+     */
+    private static int[] matches(int[] rows, IntPredicate test) {
+        return Arrays.stream(rows).filter(test).toArray();
+    }
+
+    /**
+     * Lists the rows set in a bitmap.
+     *
+     * @param bits the bitmap
+     * @return the rows, in row order
+     */
+    private static int[] rowsOf(long[] bits) {
+        List<Integer> rows = new ArrayList<>();
+        for (int row = 0; row < bits.length * Long.SIZE; row++) {
+            if (BitmapIndex.contains(bits, row)) {
+                rows.add(row);
+            }
+        }
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Maps rows of a patched table to the rows of the fresh table.
+     *
+     * @param rows     the rows of the patched table
+     * @param position the fresh row of each patched row, -1 for deleted rows
+     * @return the fresh rows, in the same order
+     */
+    private static List<Integer> map(int[] rows, int[] position) {
+        return Arrays.stream(rows).map(row -> position[row]).boxed().toList();
+    }
+
+    /**
+     * Boxes rows.
+     *
+     * @param rows the rows
+     * @return the rows as a list
+     */
+    private static List<Integer> box(int[] rows) {
+        return Arrays.stream(rows).boxed().toList();
+    }
+
+    /**
+     * Builds the games of some rows.
+     *
+     * @param table the table
+     * @param rows  the rows
+     * @return the games, in the same order
+     */
+    private static List<BoardGame> toList(GameTable table, int[] rows) {
+        return Arrays.stream(rows).mapToObj(table::game).toList();
+    }
+}
@@ -0,0 +1,237 @@
+package student;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPOutputStream;
+
+class GamesLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void loadGamesFile() {
+        LoadStats stats = new LoadStats();
+        Set<BoardGame> games = GamesLoader.loadGamesFile("/collection.csv", stats);
+        assertEquals(753, games.size());
+        assertEquals(753, stats.getRowsLoaded());
+        assertEquals(0, stats.getRowsSkipped());
+        assertTrue(stats.getElapsedNanos() > 0);
+
+        // games keep the order of the file
+        BoardGame first = List.copyOf(games).get(0);
+        assertEquals("13 Clues", first.getName());
+        assertEquals(208766, first.getId());
+        assertEquals(2, first.getMinPlayers());
+        assertEquals(6, first.getMaxPlayers());
+        assertEquals(1.8966, first.getDifficulty());
+        assertEquals(3365, first.getRank());
+        assertEquals(6.60806, first.getRating());
+        assertEquals(2016, first.getYearPublished());
+    }
+
+    @Test
+    void loadGamesFileParallel() {
+        List<BoardGame> sequential = List.copyOf(GamesLoader.loadGamesFile("/collection.csv"));
+        LoadStats stats = new LoadStats();
+        List<BoardGame> parallel = List.copyOf(GamesLoader.loadGamesFileParallel("/collection.csv",
+                stats, new ForkJoinPool(4)));
+        assertEquals(sequential, parallel);
+        assertEquals(753, stats.getRowsLoaded());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).toString(), parallel.get(i).toString());
+        }
+    }
+
+    @Test
+    void loadGamesCached() throws IOException {
+        Path snapshot = tempDir.resolve("collection.snapshot");
+        List<BoardGame> csv = List.copyOf(GamesLoader.loadGamesFile("/collection.csv"));
+
+        // first load parses the csv and writes the snapshot
+        List<BoardGame> first = List.copyOf(GamesLoader.loadGamesCached("/collection.csv",
+                snapshot, new LoadStats()));
+        assertTrue(Files.exists(snapshot));
+
+        // second load comes from the snapshot
+        LoadStats stats = new LoadStats();
+        List<BoardGame> second = List.copyOf(GamesLoader.loadGamesCached("/collection.csv",
+                snapshot, stats));
+        assertEquals(753, stats.getRowsLoaded());
+        for (int i = 0; i < csv.size(); i++) {
+            assertEquals(csv.get(i).toString(), first.get(i).toString());
+            assertEquals(csv.get(i).toString(), second.get(i).toString());
+        }
+
+        // a snapshot of another csv, or a corrupt one, is ignored
+        assertNull(GameSnapshot.read(snapshot, 1, 2, () -> 3));
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(snapshot, bytes);
+        List<BoardGame> rebuilt = List.copyOf(GamesLoader.loadGamesCached("/collection.csv",
+                snapshot, new LoadStats()));
+        assertEquals(csv.size(), rebuilt.size());
+        assertEquals(csv.get(0).toString(), rebuilt.get(0).toString());
+    }
+
+    @Test
+    void loadDatasetCachedChecksOnlyWhenTimeChanges() throws IOException {
+        Path csv = tempDir.resolve("collection.csv");
+        try (InputStream is = GamesLoader.class.getResourceAsStream("/collection.csv")) {
+            Files.write(csv, is.readAllBytes());
+        }
+        Path snapshot = tempDir.resolve("fs.snapshot");
+        List<BoardGame> expected = List.copyOf(GamesLoader.loadGamesFile(csv.toString()));
+        GameDataset first = GamesLoader.loadDatasetCached(csv.toString(), snapshot,
+                new LoadStats());
+        assertEquals(expected.size(), first.size());
+        assertEquals(expected, List.copyOf(GamesLoader.loadGamesCached(csv.toString(),
+                snapshot, new LoadStats())));
+
+        // same length and time, the snapshot is used without reading the csv
+        long length = Files.size(csv);
+        long modified = Files.getLastModifiedTime(csv).toMillis();
+        GameTable table = GameSnapshot.read(snapshot, length, modified, () -> {
+            throw new AssertionError("csv checksummed");
+        });
+        assertEquals(expected.size(), table.size());
+        assertEquals(expected.get(0).toString(), table.game(0).toString());
+
+        // a new time falls back to the checksum
+        assertNull(GameSnapshot.read(snapshot, length, modified + 1000, () -> 3));
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(modified + 1000));
+        LoadStats stats = new LoadStats();
+        assertEquals(expected.size(), GamesLoader.loadDatasetCached(csv.toString(), snapshot,
+                stats).size());
+        assertEquals(expected.size(), stats.getRowsLoaded());
+        assertEquals(0, stats.getRowsSkipped());
+        // and the snapshot takes the new time
+        assertNotNull(GameSnapshot.read(snapshot, length, modified + 1000, () -> 3));
+    }
+
+    @Test
+    void loadDatasetCachedChecksumsWhileParsing() throws IOException {
+        byte[] bytes;
+        try (InputStream is = GamesLoader.class.getResourceAsStream("/collection.csv")) {
+            bytes = is.readAllBytes();
+        }
+        Path plain = tempDir.resolve("collection.csv");
+        Files.write(plain, bytes);
+        Path gzipped = tempDir.resolve("collection.csv.gz");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+            os.write(bytes);
+        }
+        // bytes after the gzip data are never decompressed, but are part of the file
+        Path padded = tempDir.resolve("padded.csv.gz");
+        try (OutputStream os = Files.newOutputStream(padded)) {
+            os.write(Files.readAllBytes(gzipped));
+            os.write(new byte[1 << 18]);
+        }
+        for (Path csv : List.of(plain, gzipped, padded)) {
+            Path snapshot = tempDir.resolve(csv.getFileName() + ".snapshot");
+            GamesLoader.loadDatasetCached(csv.toString(), snapshot, new LoadStats());
+            // the stored checksum is of the file as stored, compressed or not
+            CRC32C crc = new CRC32C();
+            crc.update(Files.readAllBytes(csv));
+            long modified = Files.getLastModifiedTime(csv).toMillis();
+            assertNotNull(GameSnapshot.read(snapshot, Files.size(csv), modified + 1000,
+                    crc::getValue), csv.toString());
+        }
+    }
+
+    @Test
+    void loadDatasetCachedSkipsFailedLoads() throws IOException {
+        Path csv = tempDir.resolve("broken.csv");
+        Path snapshot = tempDir.resolve("broken.snapshot");
+        // missing columns
+        Files.writeString(csv, "objectname,id\nChess,1\n");
+        assertEquals(0, GamesLoader.loadDatasetCached(csv.toString(), snapshot,
+                new LoadStats()).size());
+        assertFalse(Files.exists(snapshot));
+        // cut off part way, after some games have been read
+        try (InputStream is = GamesLoader.class.getResourceAsStream("/collection.csv");
+                OutputStream os = new GZIPOutputStream(Files.newOutputStream(csv))) {
+            os.write(is.readAllBytes());
+        }
+        byte[] gzipped = Files.readAllBytes(csv);
+        Files.write(csv, Arrays.copyOf(gzipped, gzipped.length / 2));
+        LoadStats stats = new LoadStats();
+        assertTrue(GamesLoader.loadDatasetCached(csv.toString(), snapshot, stats).size() > 0);
+        assertTrue(stats.getRowsLoaded() > 0);
+        assertFalse(Files.exists(snapshot));
+        // no games
+        Files.writeString(csv, "");
+        assertEquals(0, GamesLoader.loadDatasetCached(csv.toString(), snapshot,
+                new LoadStats()).size());
+        assertFalse(Files.exists(snapshot));
+
+        // once the csv is fixed the games load, and are kept for the next start
+        try (InputStream is = GamesLoader.class.getResourceAsStream("/collection.csv")) {
+            Files.write(csv, is.readAllBytes());
+        }
+        int size = GamesLoader.loadDatasetCached(csv.toString(), snapshot, new LoadStats())
+                .size();
+        assertTrue(size > 0);
+        assertTrue(Files.exists(snapshot));
+    }
+
+    @Test
+    void defaultSnapshotIsPerUser() {
+        Path snapshot = GamesLoader.defaultSnapshot("/collection.csv");
+        assertTrue(snapshot.isAbsolute());
+        assertFalse(snapshot.startsWith(Path.of(System.getProperty("java.io.tmpdir"))));
+        assertEquals("_collection.csv.snapshot", snapshot.getFileName().toString());
+    }
+
+    @Test
+    void loadOddNames() {
+        // not a valid path on every system, falls through to the missing resource
+        LoadStats stats = new LoadStats();
+        Set<BoardGame> games = GamesLoader.loadGamesCached("/no\u0000such.csv",
+                tempDir.resolve("odd.snapshot"), stats);
+        assertTrue(games.isEmpty());
+        assertEquals(0, stats.getRowsLoaded());
+    }
+
+    @Test
+    void loadFromFilesystem() throws IOException {
+        List<BoardGame> resource = List.copyOf(GamesLoader.loadGamesFile("/collection.csv"));
+        byte[] csv;
+        try (InputStream is = GamesLoader.class.getResourceAsStream("/collection.csv")) {
+            csv = is.readAllBytes();
+        }
+        Path plain = tempDir.resolve("collection.csv");
+        Files.write(plain, csv);
+        Path gzipped = tempDir.resolve("collection.csv.gz");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+            os.write(csv);
+        }
+
+        for (Path path : List.of(plain, gzipped)) {
+            assertEquals(resource, List.copyOf(GamesLoader.loadGamesFile(path.toString())));
+            assertEquals(resource, List.copyOf(GamesLoader.loadGamesFileParallel(path.toString())));
+        }
+    }
+
+    @Test
+    void loadMissingFile() {
+        LoadStats stats = new LoadStats();
+        Set<BoardGame> games = GamesLoader.loadGamesFile("/not_a_file.csv", stats);
+        assertTrue(games.isEmpty());
+        assertEquals(0, stats.getRowsLoaded());
+    }
+}
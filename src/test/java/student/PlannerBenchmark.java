@@ -0,0 +1,432 @@
+package student;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * Rough throughput numbers for loading and filtering a large collection.
+ *
+ * Not a unit test - run it with {@code gradle benchmark -Prows=1000000}. The collection is
+ * built by repeating the rows of collection.csv with new objectids, so the values look
+ * like real data.
+ */
+public final class PlannerBenchmark {
+    /** default number of rows to generate. */
+    private static final int DEFAULT_ROWS = 500_000;
+    /** timed repeats of each measurement, the best one is reported. */
+    private static final int REPEATS = 5;
+    /** fields left out of the old reflective identity. */
+    private static final List<String> NOT_IDENTITY = List.of("minPlayers", "maxPlayers",
+            "maxPlayTime", "minPlayTime", "difficulty", "rank", "averageRating", "yearPublished",
+            "hash");
+    /** filters used for the filter throughput. */
+    private static final String[] FILTERS = {"minplayers>=2", "maxplayers<=4,year>2010",
+        "name~=the", "rating>7,difficulty<3", "minplaytime>=30,maxplaytime<=90,rank<5000",
+        "rank<100", "year>=2015,maxplaytime<=60", "name~=pandemic"};
+    /** filter used for the parallel filter and name sort latency. */
+    private static final String PARALLEL_FILTER = "minplayers>=2,maxplaytime>=10";
+    /** thread counts the parallel filter and name sort is timed with. */
+    private static final int[] THREADS = {1, 2, 4, 8};
+    /** columns the sorts are timed on. */
+    private static final GameData[] SORTS = {GameData.NAME, GameData.RATING, GameData.RANK,
+        GameData.MIN_PLAYERS};
+    /** several keys the sorts are timed on. */
+    private static final List<SortKey> MULTI_SORT = List.of(new SortKey(GameData.RATING, false),
+            new SortKey(GameData.DIFFICULTY, true), new SortKey(GameData.NAME, true));
+    /** filters applied one after the other for the progressive filter latency. */
+    private static final String[] CHAIN = {"minplayers>=1", "maxplayers<=8", "year>=1990",
+        "maxplaytime<=240"};
+    /** planning sessions run at once over one dataset. */
+    private static final int SESSIONS = 200;
+    /** games in the first page of the paged filter. */
+    private static final int PAGE = 20;
+    /** single conditions used for the whole column scan throughput. */
+    private static final String[] SCANS = {"minplaytime>=30", "rank<5000", "rating>7",
+        "difficulty!=3"};
+
+    /** private constructor as static class. */
+    private PlannerBenchmark() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args optionally the number of rows to generate
+     * @throws IOException if the generated collection can not be written
+     */
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        Path csv = Files.createTempFile("bgarena-bench", ".csv");
+        try {
+            writeCollection(csv, rows);
+            System.out.printf("collection: %d rows, %d MiB%n", rows, Files.size(csv) >> 20);
+            Set<BoardGame> games = benchmarkLoad(csv.toString());
+            benchmarkIdentity(new ArrayList<>(games));
+            benchmarkFilter(games);
+            benchmarkParallel(games);
+            benchmarkPage(games);
+            benchmarkSort(games);
+            benchmarkChain(games);
+            benchmarkSessions(games);
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    /**
+     * Times the sequential and parallel loaders.
+     *
+     * @param csv the collection file
+     * @return the loaded games
+     */
+    private static Set<BoardGame> benchmarkLoad(String csv) {
+        Set<BoardGame> games = null;
+        for (int i = 0; i < REPEATS; i++) {
+            LoadStats stats = new LoadStats();
+            games = GamesLoader.loadGamesFile(csv, stats);
+            System.out.printf("load sequential:   %s%n", stats);
+        }
+        for (int i = 0; i < REPEATS; i++) {
+            LoadStats stats = new LoadStats();
+            GamesLoader.loadGamesFileParallel(csv, stats, ForkJoinPool.commonPool());
+            System.out.printf("load parallel:     %s%n", stats);
+        }
+        return games;
+    }
+
+    /**
+     * Times inserting every game into a hash set, with the field based identity and with
+     * the reflective identity BoardGame used to have.
+     *
+     * @param games the games to insert
+     */
+    private static void benchmarkIdentity(List<BoardGame> games) {
+        report("set insert fields", games.size(), () -> {
+            Set<BoardGame> set = new HashSet<>();
+            set.addAll(games);
+            return set.size();
+        });
+        report("set insert reflect", games.size(), () -> {
+            Set<ReflectiveIdentity> set = new HashSet<>();
+            for (BoardGame game : games) {
+                set.add(new ReflectiveIdentity(game));
+            }
+            return set.size();
+        });
+    }
+
+    /**
+     * Times each filter on a planner with empty caches, without sorting, then again as a
+     * repeated query after a reset.
+     *
+     * @param games the games to filter
+     */
+    private static void benchmarkFilter(Set<BoardGame> games) {
+        report("build table and indexes", games.size(), () -> GameTable.of(games).size());
+        GameTable table = GameTable.of(games);
+        benchmarkScan(table);
+        for (String filter : FILTERS) {
+            report("filter " + filter, games.size(),
+                    () -> new Planner(table).filter(filter, GameData.ID).count());
+        }
+        Planner planner = new Planner(table);
+        for (String filter : FILTERS) {
+            report("repeat " + filter, games.size(), () -> {
+                planner.reset();
+                return planner.filter(filter).count();
+            });
+        }
+        System.out.printf("plan cache: %s%n", planner.getPlanCacheStats());
+        System.out.printf("result cache: %s%n", planner.getResultCacheStats());
+    }
+
+    /**
+     * Times filtering and sorting the whole collection by name on the calling thread, then on
+     * pools of several sizes. Each run uses a new planner, so nothing comes from the caches.
+     * On a pool the rows are scanned in ScanTasks, and the name ranks are packed and radix
+     * sorted a slice of the rows per task.
+     *
+     * @param games the games to filter
+     */
+    private static void benchmarkParallel(Set<BoardGame> games) {
+        GameTable table = GameTable.of(games);
+        report("sequential filter+sort", games.size(), () -> {
+            Planner planner = new Planner(table);
+            planner.setParallelism(null, 0);
+            return planner.filter(PARALLEL_FILTER, GameData.NAME, false).count();
+        });
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                report("parallel filter+sort, " + threads + " threads", games.size(), () -> {
+                    Planner planner = new Planner(table);
+                    planner.setParallelism(pool, Planner.DEFAULT_PARALLEL_ROWS);
+                    return planner.filter(PARALLEL_FILTER, GameData.NAME, false).count();
+                });
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Times getting the first page of a sorted filter against filtering and sorting all of it,
+     * on new planners so nothing comes from the caches.
+     *
+     * @param games the games to filter
+     */
+    private static void benchmarkPage(Set<BoardGame> games) {
+        GameTable table = GameTable.of(games);
+        for (String filter : List.of("", PARALLEL_FILTER)) {
+            report("full sort " + filter, games.size(), () -> new Planner(table)
+                    .filter(filter, GameData.RATING, false).limit(PAGE).count());
+            report("first " + PAGE + " " + filter, games.size(), () -> new Planner(table)
+                    .filter(filter, GameData.RATING, false, 0, PAGE).count());
+        }
+    }
+
+    /**
+     * Times sorting every row, which walks the column's index, and every other row in reverse
+     * row order, which radix sorts them, against a comparator sort of the games.
+     *
+     * @param games the games to sort
+     */
+    private static void benchmarkSort(Set<BoardGame> games) {
+        GameTable table = GameTable.of(games);
+        int[] all = table.allRows();
+        int[] shuffled = new int[all.length / 2];
+        for (int i = 0; i < shuffled.length; i++) {
+            shuffled[i] = all.length - 1 - 2 * i;
+        }
+        List<BoardGame> list = new ArrayList<>(games);
+        for (GameData column : SORTS) {
+            List<SortKey> order = List.of(new SortKey(column, false));
+            report("index sort " + column, all.length,
+                    () -> Sorting.sortRows(table, all, order).length);
+            report("radix sort " + column, shuffled.length,
+                    () -> Sorting.sortRows(table, shuffled, order).length);
+            report("stream sort " + column, list.size(),
+                    () -> Sorting.sortOn(list.stream(), column, false).toArray().length);
+        }
+        report("radix sort " + MULTI_SORT, all.length,
+                () -> Sorting.sortRows(table, all, MULTI_SORT).length);
+        Comparator<BoardGame> chain = Comparator.comparingDouble(BoardGame::getRating)
+                .reversed().thenComparingDouble(BoardGame::getDifficulty)
+                .thenComparing(BoardGame::getName, String::compareToIgnoreCase);
+        report("comparator sort " + MULTI_SORT, list.size(),
+                () -> list.stream().sorted(chain).toArray().length);
+    }
+
+    /**
+     * Times a chain of narrowing filters that all sort the same way, on a new planner each
+     * run so nothing comes from the caches. Only the first filter has to sort.
+     *
+     * @param games the games to filter
+     */
+    private static void benchmarkChain(Set<BoardGame> games) {
+        GameTable table = GameTable.of(games);
+        report("narrowing chain by rating", games.size(), () -> {
+            Planner planner = new Planner(table);
+            long count = 0;
+            for (String filter : CHAIN) {
+                count = planner.filter(filter, GameData.RATING, false).count();
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Times many sessions sharing one dataset, each running one of the filters and then the
+     * narrowing chain a page at a time, spread over a few threads. Each run starts from a new
+     * dataset, so only queries another session of the same run already ran are cache hits.
+     *
+     * @param games the games to filter
+     */
+    private static void benchmarkSessions(Set<BoardGame> games) {
+        GameTable table = GameTable.of(games);
+        for (int threads : THREADS) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                report(SESSIONS + " sessions, " + threads + " threads",
+                        (long) SESSIONS * games.size(),
+                        () -> runSessions(pool, new GameDataset(table)));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Runs the sessions of the sessions benchmark and waits for all of them.
+     *
+     * @param pool    the threads to run them on
+     * @param dataset the shared dataset
+     * @return the total number of games on the last pages
+     */
+    private static long runSessions(ExecutorService pool, GameDataset dataset) {
+        List<Future<Long>> sessions = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            String first = FILTERS[i % FILTERS.length];
+            sessions.add(pool.submit(() -> runSession(dataset, first)));
+        }
+        long count = 0;
+        try {
+            for (Future<Long> session : sessions) {
+                count += session.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("session failed", e);
+        }
+        return count;
+    }
+
+    /**
+     * Runs one session of the sessions benchmark.
+     *
+     * @param dataset the shared dataset
+     * @param first   the filter the session starts with
+     * @return the number of games on the last page
+     */
+    private static long runSession(GameDataset dataset, String first) {
+        Planner planner = new Planner(dataset);
+        planner.setParallelism(null, 0);
+        long count = planner.filter(first, GameData.RATING, false, 0, PAGE).count();
+        for (String filter : CHAIN) {
+            count = planner.filter(filter, GameData.RATING, false, 0, PAGE).count();
+        }
+        return count;
+    }
+
+    /**
+     * Times testing every row of a column against a single condition, one row at a time and,
+     * in a build run with -Pvector, with the Vector API.
+     *
+     * @param table the table to scan
+     */
+    private static void benchmarkScan(GameTable table) {
+        for (String scan : SCANS) {
+            FilterCondition condition = FilterPlan.compile(scan).getConditions()[0];
+            IntPredicate test = condition.bind(table);
+            report("scalar scan " + scan, table.size(), () -> {
+                int count = 0;
+                for (int row = 0; row < table.size(); row++) {
+                    count += test.test(row) ? 1 : 0;
+                }
+                return count;
+            });
+            if (VectorScan.isAvailable()) {
+                report("vector scan " + scan, table.size(), () -> {
+                    long count = 0;
+                    for (long word : VectorScan.matching(table, condition)) {
+                        count += Long.bitCount(word);
+                    }
+                    return count;
+                });
+            }
+        }
+    }
+
+    /**
+     * Runs a measurement a few times and prints the best throughput.
+     *
+     * @param label what is being measured
+     * @param rows  rows processed by one run
+     * @param run   the work, returns a value so it is not optimized away
+     */
+    static void report(String label, long rows, Measurement run) {
+        long best = Long.MAX_VALUE;
+        long result = 0;
+        for (int i = 0; i < REPEATS; i++) {
+            long start = System.nanoTime();
+            result = run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-45s %9.2f ms %12.0f rows/sec (result %d)%n", label, best / 1e6,
+                rows * 1e9 / best, result);
+    }
+
+    /**
+     * Writes a collection by repeating the rows of collection.csv with new objectids.
+     *
+     * @param file where to write the collection
+     * @param rows number of rows to write
+     * @throws IOException if the file can not be written
+     */
+    static void writeCollection(Path file, int rows) throws IOException {
+        List<String> lines;
+        try (InputStream is = PlannerBenchmark.class.getResourceAsStream("/collection.csv")) {
+            lines = List.of(new String(is.readAllBytes(), StandardCharsets.UTF_8).split("\n"));
+        }
+        int idColumn = List.of(lines.get(0).split(",")).indexOf(GameData.ID.getColumnName());
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write(lines.get(0));
+            writer.newLine();
+            for (int i = 0; i < rows; i++) {
+                String[] columns = lines.get(1 + i % (lines.size() - 1)).split(",", -1);
+                columns[idColumn] = String.valueOf(i + 1);
+                writer.write(String.join(",", columns));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * A measured piece of work.
+     */
+    @FunctionalInterface
+    interface Measurement {
+        /**
+         * Does the work once.
+         *
+         * @return a result of the work
+         */
+        long run();
+    }
+
+    /**
+     * Wraps a game with the reflection based equals and hashCode BoardGame used to have.
+     */
+    private static final class ReflectiveIdentity {
+        /** the wrapped game. */
+        private final BoardGame game;
+
+        /**
+         * Wraps a game.
+         *
+         * @param game the game
+         */
+        ReflectiveIdentity(BoardGame game) {
+            this.game = game;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ReflectiveIdentity
+                    && EqualsBuilder.reflectionEquals(game, ((ReflectiveIdentity) obj).game,
+                            NOT_IDENTITY);
+        }
+
+        @Override
+        public int hashCode() {
+            return HashCodeBuilder.reflectionHashCode(game, NOT_IDENTITY);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package student;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the row sorts on a pool with the same sorts on the calling thread and with a
+ * stable sort of the values, on a table large enough for the radix sort to be cut into
+ * slices.
+ */
+class SortingTest {
+    /** number of rows in the table. */
+    private static final int ROWS = 20000;
+    /** the sorts, from one radix pass to more than 64 bits of ranks, which merge sorts. */
+    private static final List<List<SortKey>> ORDERS = List.of(
+            List.of(new SortKey(GameData.NAME, true)),
+            List.of(new SortKey(GameData.MIN_PLAYERS, false)),
+            List.of(new SortKey(GameData.MIN_PLAYERS, false), new SortKey(GameData.RATING, true)),
+            List.of(new SortKey(GameData.RANK, false), new SortKey(GameData.NAME, true),
+                    new SortKey(GameData.YEAR, true)),
+            List.of(new SortKey(GameData.RATING, true), new SortKey(GameData.DIFFICULTY, false),
+                    new SortKey(GameData.RANK, true), new SortKey(GameData.MAX_TIME, true),
+                    new SortKey(GameData.NAME, false), new SortKey(GameData.YEAR, true),
+                    new SortKey(GameData.MIN_TIME, true)));
+
+    @Test
+    void testPoolSortsTheSame() {
+        GameTable table = table();
+        Random random = new Random(21);
+        List<Integer> all = new ArrayList<>();
+        for (int row = 0; row < ROWS; row++) {
+            all.add(row);
+        }
+        Collections.shuffle(all, random);
+        List<int[]> rowSets = List.of(unbox(all), unbox(all.subList(0, ROWS / 3)),
+                unbox(all.subList(0, 100)));
+        for (int threads : new int[] {2, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (List<SortKey> order : ORDERS) {
+                    for (int[] rows : rowSets) {
+                        int[] copy = rows.clone();
+                        List<Integer> expected = sorted(table, rows, order);
+                        String message = order + " on " + rows.length + " rows, " + threads;
+                        assertEquals(expected, box(Sorting.sortRows(table, rows, order, null)),
+                                message);
+                        assertEquals(expected, box(Sorting.sortRows(table, rows, order, pool)),
+                                message);
+                        assertArrayEquals(copy, rows, message);
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Sorts rows with a stable sort, comparing the values of the columns.
+     *
+     * @param table the table
+     * @param rows  the rows
+     * @param order the columns to sort on
+     * @return the sorted rows
+     */
+    private static List<Integer> sorted(GameTable table, int[] rows, List<SortKey> order) {
+        Comparator<Integer> compare = (a, b) -> 0;
+        for (SortKey key : order) {
+            Comparator<Integer> column = comparator(table, key.getColumn());
+            compare = compare.thenComparing(key.isAscending() ? column : column.reversed());
+        }
+        List<Integer> sorted = new ArrayList<>(box(rows));
+        sorted.sort(compare);
+        return sorted;
+    }
+
+    /**
+     * Gets a comparator of rows on the values of one column.
+     *
+     * @param table  the table
+     * @param column the column
+     * @return the comparator, in ascending order
+     */
+    private static Comparator<Integer> comparator(GameTable table, GameData column) {
+        if (column == GameData.NAME) {
+            NameKey[] names = new NameKey[table.size()];
+            for (int row = 0; row < names.length; row++) {
+                names[row] = new NameKey(table.game(row).getName());
+            }
+            return (a, b) -> names[a].compareTo(names[b]);
+        }
+        int[] ints = table.intColumn(column);
+        if (ints != null) {
+            return (a, b) -> Integer.compare(ints[a], ints[b]);
+        }
+        double[] doubles = table.doubleColumn(column);
+        return (a, b) -> Double.compare(doubles[a], doubles[b]);
+    }
+
+    /**
+     * Boxes rows.
+     *
+     * @param rows the rows
+     * @return the rows as a list
+     */
+    private static List<Integer> box(int[] rows) {
+        return Arrays.stream(rows).boxed().toList();
+    }
+
+    /**
+     * Unboxes rows.
+     *
+     * @param rows the rows
+     * @return the rows as an array
+     */
+    private static int[] unbox(List<Integer> rows) {
+        return rows.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Builds a table of random games, with many ties in every column, names that differ only
+     * in case, and some NaN and -0.0 ratings.
+     *
+     * @return the table
+     */
+    private static GameTable table() {
+        Random random = new Random(18);
+        double[] odd = {Double.NaN, -0.0, 0.0};
+        List<BoardGame> games = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            String name = (random.nextBoolean() ? "Game " : "game ") + random.nextInt(3000);
+            double rating = random.nextInt(10) == 0 ? odd[random.nextInt(odd.length)]
+                    : random.nextInt(1001) / 100.0;
+            int minPlayers = 1 + random.nextInt(6);
+            int minTime = 5 * random.nextInt(60);
+            games.add(new BoardGame(name, i, minPlayers, minPlayers + random.nextInt(8),
+                    minTime, minTime + 5 * random.nextInt(30), random.nextInt(50) / 10.0,
+                    random.nextInt(ROWS), rating, 1950 + random.nextInt(75)));
+        }
+        return GameTable.of(games);
+    }
+}
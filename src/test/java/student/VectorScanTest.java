@@ -0,0 +1,91 @@
+package student;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Compares the vector scans with the scalar conditions they stand in for. Tables this small
+ * never use the vector scans in the planner, so they are called directly. The scans are only
+ * there in a build run with -Pvector, and are skipped otherwise.
+ */
+class VectorScanTest {
+    /** ratings and difficulties the tables cycle through. */
+    private static final double[] DOUBLES = {7.0, 6.99, 7.01, Double.NaN, -0.0, 0.0, -1.0,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 10.0, 3.5};
+    /** players and years the tables cycle through. */
+    private static final int[] INTS = {2, Integer.MIN_VALUE, -1, 0, 1, 3, Integer.MAX_VALUE, 7};
+    /** table sizes, around the lane counts and the 64 bit words of the bitmaps. */
+    private static final int[] SIZES = {0, 1, 2, 3, 5, 7, 8, 9, 15, 16, 17, 31, 33, 63, 64, 65,
+        127, 129, 300};
+    /** values compared with, written as in a filter. */
+    private static final String[] VALUES = {"7", "0", "-0", "-1", "10", "2147483647",
+        "-2147483648"};
+    /** the operators, CONTAINS has no vector scan. */
+    private static final String[] OPERATORS = {">", "<", ">=", "<=", "==", "!="};
+
+    @Test
+    void testMatchesScalarConditions() {
+        assumeTrue(VectorScan.isAvailable(), "built without -Pvector");
+        for (int size : SIZES) {
+            GameTable table = table(size);
+            for (String column : List.of("rating", "difficulty", "minplayers", "year")) {
+                for (String op : OPERATORS) {
+                    for (String value : VALUES) {
+                        String filter = column + op + value;
+                        FilterCondition condition = FilterPlan.compile(filter)
+                                .getConditions()[0];
+                        assertSame(table, condition, filter);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testContainsIsNotScanned() {
+        FilterCondition condition = FilterPlan.compile("rating~=7").getConditions()[0];
+        assertNull(VectorScan.matching(table(10), condition));
+    }
+
+    /**
+     * Checks that the vector scan of a condition sets exactly the bits of the rows the
+     * scalar test passes.
+     *
+     * @param table     the table
+     * @param condition the condition
+     * @param filter    the filter, for the failure message
+     */
+    private static void assertSame(GameTable table, FilterCondition condition, String filter) {
+        long[] bits = VectorScan.matching(table, condition);
+        IntPredicate test = condition.bind(table);
+        assertEquals(BitmapIndex.words(table.size()), bits.length, filter);
+        for (int row = 0; row < bits.length * 64; row++) {
+            boolean expected = row < table.size() && test.test(row);
+            assertEquals(expected, BitmapIndex.contains(bits, row),
+                    filter + " row " + row + " of " + table.size());
+        }
+    }
+
+    /**
+     * Builds a table whose columns cycle through the test values, each at its own pace so
+     * the rows hold many pairs of them.
+     *
+     * @param size the number of rows
+     * @return the table
+     */
+    private static GameTable table(int size) {
+        List<BoardGame> games = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            games.add(new BoardGame("Game " + i, i, INTS[i % INTS.length],
+                    INTS[i / 2 % INTS.length], 10, 20, DOUBLES[i / 3 % DOUBLES.length], i,
+                    DOUBLES[i % DOUBLES.length], INTS[i / 5 % INTS.length]));
+        }
+        return GameTable.of(games);
+    }
+}
@@ -0,0 +1,140 @@
+package student;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The compare loops of {@link VectorScan}, on the incubating Vector API.
+ *
+ * This is its own source set, only compiled when the build is run with -Pvector, as it needs
+ * the jdk.incubator.vector module to compile and run. VectorScan only loads it, by
+ * reflection, once it knows the module is there.
+ *
+ * A vector of values is compared into a mask, and {@link VectorMask#toLong()} turns the
+ * mask into bits, lane i in bit i. The number of lanes is a power of two no bigger than
+ * 64, so the bits of one vector always fall inside a single word of the bitmap. The rows
+ * after the last full vector are compared as one vector with the lanes past the end
+ * masked off.
+ */
+final class VectorLanes {
+    /** int lanes of the widest vectors the CPU has. */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    /** double lanes of the widest vectors the CPU has. */
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    /** private constructor as static class. */
+    private VectorLanes() {
+    }
+
+    /**
+     * Compares every value of an int column with a value.
+     *
+     * @param values the column
+     * @param op     the operation, not CONTAINS
+     * @param value  the value to compare with
+     * @return a new bitmap of the matching rows
+     */
+    static long[] matching(int[] values, Operations op, int value) {
+        long[] bits = new long[BitmapIndex.words(values.length)];
+        int lanes = INTS.length();
+        int bound = INTS.loopBound(values.length);
+        int row = 0;
+        for (; row < bound; row += lanes) {
+            VectorMask<Integer> mask = compare(IntVector.fromArray(INTS, values, row), op,
+                    value);
+            bits[row >>> 6] |= mask.toLong() << row;
+        }
+        if (row < values.length) {
+            VectorMask<Integer> inRange = INTS.indexInRange(row, values.length);
+            VectorMask<Integer> mask = compare(IntVector.fromArray(INTS, values, row,
+                    inRange), op, value);
+            bits[row >>> 6] |= mask.and(inRange).toLong() << row;
+        }
+        return bits;
+    }
+
+    /**
+     * Compares every value of a double column with a value.
+     *
+     * @param values the column
+     * @param op     the operation, not CONTAINS
+     * @param value  the value to compare with
+     * @return a new bitmap of the matching rows
+     */
+    static long[] matching(double[] values, Operations op, double value) {
+        long[] bits = new long[BitmapIndex.words(values.length)];
+        int lanes = DOUBLES.length();
+        // != is == with the bits flipped, so NaN is != everything
+        long flip = op == Operations.NOT_EQUALS ? -1L >>> (64 - lanes) : 0;
+        int bound = DOUBLES.loopBound(values.length);
+        int row = 0;
+        for (; row < bound; row += lanes) {
+            VectorMask<Double> mask = compare(DoubleVector.fromArray(DOUBLES, values, row),
+                    op, value);
+            bits[row >>> 6] |= (mask.toLong() ^ flip) << row;
+        }
+        if (row < values.length) {
+            VectorMask<Double> inRange = DOUBLES.indexInRange(row, values.length);
+            VectorMask<Double> mask = compare(DoubleVector.fromArray(DOUBLES, values, row,
+                    inRange), op, value);
+            bits[row >>> 6] |= ((mask.toLong() ^ flip) & inRange.toLong()) << row;
+        }
+        return bits;
+    }
+
+    /**
+     * Compares the lanes of a vector with a value.
+     *
+     * The compare is only compiled to a vector instruction when it is a constant, so
+     * there is a branch for each one, and this is small enough to be inlined into the
+     * loop, where the operation never changes.
+     *
+     * @param lanes the values
+     * @param op    the operation, not CONTAINS
+     * @param value the value to compare with
+     * @return the lanes that match
+     */
+    private static VectorMask<Integer> compare(IntVector lanes, Operations op, int value) {
+        switch (op) {
+            case GREATER_THAN:
+                return lanes.compare(VectorOperators.GT, value);
+            case LESS_THAN:
+                return lanes.compare(VectorOperators.LT, value);
+            case GREATER_THAN_EQUALS:
+                return lanes.compare(VectorOperators.GE, value);
+            case LESS_THAN_EQUALS:
+                return lanes.compare(VectorOperators.LE, value);
+            case NOT_EQUALS:
+                return lanes.compare(VectorOperators.NE, value);
+            default:
+                return lanes.compare(VectorOperators.EQ, value);
+        }
+    }
+
+    /**
+     * Compares the lanes of a vector with a value, for != this is the lanes that are ==.
+     *
+     * @param lanes the values
+     * @param op    the operation, not CONTAINS
+     * @param value the value to compare with
+     * @return the lanes that match, or for != the lanes that do not
+     */
+    private static VectorMask<Double> compare(DoubleVector lanes, Operations op,
+            double value) {
+        switch (op) {
+            case GREATER_THAN:
+                return lanes.compare(VectorOperators.GT, value);
+            case LESS_THAN:
+                return lanes.compare(VectorOperators.LT, value);
+            case GREATER_THAN_EQUALS:
+                return lanes.compare(VectorOperators.GE, value);
+            case LESS_THAN_EQUALS:
+                return lanes.compare(VectorOperators.LE, value);
+            default:
+                return lanes.compare(VectorOperators.EQ, value);
+        }
+    }
+}